@@ -25,6 +25,14 @@ import java.io.File;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Stack;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -97,6 +105,13 @@ public class FormattedTextImpl implements FormattedText
     private static final String SAK_PROP_REFERRER_POLICY = "content.cleaner.referrer-policy";
     private static final String SAKAI_REFERRER_POLICY_DEFAULT = "noopener";
 
+    /* Results of scanning (and link rewriting) keyed by security level, link target setting and a hash of the input,
+     * so that the same rich-text blocks are not scanned again on every save - content.cleaner.cache.size (0 disables)
+     */
+    private static final String SAK_PROP_CACHE_SIZE = "content.cleaner.cache.size";
+    private static final int CACHE_SIZE_DEFAULT = 1000;
+    private Map<String, SanitizedText> sanitizedCache = null;
+
     private final String DEFAULT_RESOURCECLASS = "org.sakaiproject.localization.util.ContentProperties";
     protected final String DEFAULT_RESOURCEBUNDLE = "org.sakaiproject.localization.bundle.content.content";
     private final String RESOURCECLASS = "resource.class.content";
@@ -144,6 +159,11 @@ public class FormattedTextImpl implements FormattedText
 
             referrerPolicy = serverConfigurationService.getString(SAK_PROP_REFERRER_POLICY, SAKAI_REFERRER_POLICY_DEFAULT);
         }
+        int cacheSize = CACHE_SIZE_DEFAULT;
+        if (serverConfigurationService != null) {
+            cacheSize = serverConfigurationService.getInt(SAK_PROP_CACHE_SIZE, cacheSize);
+        }
+        sanitizedCache = cacheSize > 0 ? createSanitizedCache(cacheSize) : null;
         if (useLegacy) {
             log.error(
                      "**************************************************\n"
@@ -193,8 +213,16 @@ public class FormattedTextImpl implements FormattedText
         @param str Value to process
     */
     public String removeSurrogates(String str) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < str.length(); i++) {
+        int first = 0;
+        while (first < str.length() && !Character.isSurrogate(str.charAt(first))) {
+            first++;
+        }
+        if (first == str.length()) {
+            return str;
+        }
+        StringBuilder sb = new StringBuilder(str.length());
+        sb.append(str, 0, first);
+        for (int i = first; i < str.length(); i++) {
             char c = str.charAt(i);
             if (!Character.isSurrogate(c)) {
                 sb.append(c);
@@ -385,49 +413,43 @@ public class FormattedTextImpl implements FormattedText
             }
 
             if (checkForEvilTags) {
-                // use the owasp antisamy processor
-                AntiSamy as = antiSamyHigh;
-                if (Level.LOW.equals(level)) {
-                    as = antiSamyLow;
-                }
-                try {
-                    CleanResults cr = as.scan(val);
-                    if (cr.getNumberOfErrors() > 0) {
-                        // TODO currently no way to get internationalized versions of error messages
-                        for (String errorMsg : cr.getErrorMessages()) {
-                            String i18nErrorMsg = new String(errorMsg.getBytes("ISO-8859-1"),"UTF8");
-                            formattedTextErrors.append(i18nErrorMsg + "<br/>");
-                        }
+                boolean addBlankTarget = addBlankTargetToLinks();
+                String cacheKey = sanitizedCache != null ? getSanitizedCacheKey(val, level, addBlankTarget) : null;
+                SanitizedText sanitized = cacheKey != null ? sanitizedCache.get(cacheKey) : null;
+                if (sanitized == null) {
+                    // use the owasp antisamy processor
+                    AntiSamy as = antiSamyHigh;
+                    if (Level.LOW.equals(level)) {
+                        as = antiSamyLow;
                     }
-                    val = cr.getCleanHTML();
-
-                    // now replace all the A tags WITHOUT a target with _blank (to match the old functionality)
-                    if (addBlankTargetToLinks() && StringUtils.isNotBlank(val)) {
-                        Matcher m = M_patternAnchorTagWithOutTargetAndWithHrefAndHrefNotStartingWithHash.matcher(val);
-                        if (m.find()) {
-                            if (StringUtils.isNotBlank(referrerPolicy)) {
-                                val = m.replaceAll("$1$2 target=\"_blank\" rel=\"" + referrerPolicy + "\">"); // adds a target and rel to A tags without one
-                            } else {
-                                val = m.replaceAll("$1$2 target=\"_blank\">"); // adds a target to A tags without one
+                    try {
+                        CleanResults cr = as.scan(val);
+                        StringBuilder scanErrors = new StringBuilder();
+                        if (cr.getNumberOfErrors() > 0) {
+                            // TODO currently no way to get internationalized versions of error messages
+                            for (String errorMsg : cr.getErrorMessages()) {
+                                String i18nErrorMsg = new String(errorMsg.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+                                scanErrors.append(i18nErrorMsg).append("<br/>");
                             }
                         }
-                    }
-
-                    // If there is a referrer policy defined...
-                    if (StringUtils.isNotBlank(referrerPolicy) && StringUtils.isNotBlank(val) ) {
-                        // If the A tag contains target="_blank" but is not accompanied by a rel attribute, add it
-                        Matcher m = M_patternAnchorTagWithTargetBlankAndWithOutRel.matcher(val);
-                        if (m.find()) {
-                            val = m.replaceAll("$1$2$3 rel=\"" + referrerPolicy + "\">"); // adds a rel to A tags without one
+                        // now replace all the A tags WITHOUT a target with _blank (to match the old functionality)
+                        // and add the referrer policy to the ones with a _blank target
+                        sanitized = new SanitizedText(rewriteAnchorTags(cr.getCleanHTML(), addBlankTarget), scanErrors.toString());
+                        if (cacheKey != null) {
+                            sanitizedCache.put(cacheKey, sanitized);
                         }
+                    } catch (ScanException e) {
+                        // this will match the legacy behavior
+                        val = "";
+                        log.error("processFormattedText: Failure during scan of input html: " + e, e);
+                    } catch (PolicyException e) {
+                        // this is an unrecoverable failure
+                        throw new RuntimeException("Unable to access the antiSamy policy file: "+e, e);
                     }
-                } catch (ScanException e) {
-                    // this will match the legacy behavior
-                    val = "";
-                    log.error("processFormattedText: Failure during scan of input html: " + e, e);
-                } catch (PolicyException e) {
-                    // this is an unrecoverable failure
-                    throw new RuntimeException("Unable to access the antiSamy policy file: "+e, e);
+                }
+                if (sanitized != null) {
+                    formattedTextErrors.append(sanitized.errors);
+                    val = sanitized.html;
                 }
             }
 
@@ -483,6 +505,183 @@ public class FormattedTextImpl implements FormattedText
         return val;
     }
 
+    /**
+     * Does the same as the M_patternAnchorTagWithOutTargetAndWithHrefAndHrefNotStartingWithHash and
+     * M_patternAnchorTagWithTargetBlankAndWithOutRel replacements, in a single pass over the html.
+     * AntiSamy output never has a '<' inside of a tag, for other html this falls back to the patterns.
+     * 
+     * @param html
+     *        The cleaned html
+     * @param addBlankTarget
+     *        If true, add ' target="_blank" ' to the A tags with a href (not starting with #) and no target
+     * @return The html with the A tags rewritten
+     */
+    private String rewriteAnchorTags(String html, boolean addBlankTarget) {
+        boolean addRel = StringUtils.isNotBlank(referrerPolicy);
+        if (StringUtils.isBlank(html) || !(addBlankTarget || addRel)) {
+            return html;
+        }
+        StringBuilder sb = null;
+        int copied = 0;
+        int from = 0;
+        while (true) {
+            int start = html.indexOf('<', from);
+            if (start < 0 || start + 3 > html.length()) {
+                break;
+            }
+            from = start + 1;
+            char a = html.charAt(start + 1);
+            if ((a != 'a' && a != 'A') || !isPatternWhitespace(html.charAt(start + 2))) {
+                continue;
+            }
+            int end = html.indexOf('>', start + 3);
+            if (end < 0) {
+                break;
+            }
+            String attributes = html.substring(start + 3, end);
+            if (attributes.indexOf('<') >= 0) {
+                return rewriteAnchorTagsWithPatterns(html, addBlankTarget);
+            }
+            String appended = null;
+            if (addBlankTarget && indexOfIgnoreCase(attributes, "href=", 0) >= 0
+                    && indexOfIgnoreCase(attributes, "href=\"#", 0) < 0
+                    && indexOfIgnoreCase(attributes, "target=", 0) < 0) {
+                // adds a target (and rel) to A tags without one
+                appended = addRel ? " target=\"_blank\" rel=\"" + referrerPolicy + "\"" : " target=\"_blank\"";
+            } else if (addRel && hasBlankTargetWithOutRel(attributes)) {
+                // adds a rel to A tags with a _blank target and without a rel
+                appended = " rel=\"" + referrerPolicy + "\"";
+            }
+            if (appended != null) {
+                if (sb == null) {
+                    sb = new StringBuilder(html.length() + 64);
+                }
+                sb.append(html, copied, end).append(appended);
+                copied = end;
+            }
+            from = end + 1;
+        }
+        if (sb == null) {
+            return html;
+        }
+        return sb.append(html, copied, html.length()).toString();
+    }
+
+    private String rewriteAnchorTagsWithPatterns(String html, boolean addBlankTarget) {
+        if (addBlankTarget) {
+            Matcher m = M_patternAnchorTagWithOutTargetAndWithHrefAndHrefNotStartingWithHash.matcher(html);
+            if (m.find()) {
+                if (StringUtils.isNotBlank(referrerPolicy)) {
+                    html = m.replaceAll("$1$2 target=\"_blank\" rel=\"" + referrerPolicy + "\">"); // adds a target and rel to A tags without one
+                } else {
+                    html = m.replaceAll("$1$2 target=\"_blank\">"); // adds a target to A tags without one
+                }
+            }
+        }
+        if (StringUtils.isNotBlank(referrerPolicy)) {
+            Matcher m = M_patternAnchorTagWithTargetBlankAndWithOutRel.matcher(html);
+            if (m.find()) {
+                html = m.replaceAll("$1$2$3 rel=\"" + referrerPolicy + "\">"); // adds a rel to A tags without one
+            }
+        }
+        return html;
+    }
+
+    /**
+     * Matches the attributes like M_patternAnchorTagWithTargetBlankAndWithOutRel: some "target...=..._blank" which is
+     * not followed by a "rel...=" in the rest of the tag
+     */
+    private static boolean hasBlankTargetWithOutRel(String attributes) {
+        for (int i = indexOfIgnoreCase(attributes, "target", 0); i >= 0; i = indexOfIgnoreCase(attributes, "target", i + 1)) {
+            int valueEnd = endOfAttributeToken(attributes, i + 6);
+            int equals = attributes.indexOf('=', i + 6);
+            if (equals < 0 || equals >= valueEnd) {
+                continue;
+            }
+            int blank = indexOfIgnoreCase(attributes, "_blank", equals + 1);
+            if (blank < 0 || blank + 6 > valueEnd) {
+                continue;
+            }
+            boolean relFollows = false;
+            for (int r = indexOfIgnoreCase(attributes, "rel", i); r >= 0 && !relFollows; r = indexOfIgnoreCase(attributes, "rel", r + 1)) {
+                int relEquals = attributes.indexOf('=', r + 3);
+                relFollows = relEquals >= 0 && relEquals < endOfAttributeToken(attributes, r + 3);
+            }
+            if (!relFollows) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** @return the index of the first whitespace (or end) at or after from, like [^<>\s]* in the patterns */
+    private static int endOfAttributeToken(String s, int from) {
+        int i = from;
+        while (i < s.length() && !isPatternWhitespace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /** @return true for the characters matched by \s in a Pattern */
+    private static boolean isPatternWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /** ASCII case insensitive indexOf, like Pattern.CASE_INSENSITIVE */
+    private static int indexOfIgnoreCase(String s, String lowerCaseSearch, int from) {
+        int last = s.length() - lowerCaseSearch.length();
+        for (int i = Math.max(from, 0); i <= last; i++) {
+            int j = 0;
+            while (j < lowerCaseSearch.length()) {
+                char c = s.charAt(i + j);
+                if (c >= 'A' && c <= 'Z') {
+                    c += 'a' - 'A';
+                }
+                if (c != lowerCaseSearch.charAt(j)) {
+                    break;
+                }
+                j++;
+            }
+            if (j == lowerCaseSearch.length()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Map<String, SanitizedText> createSanitizedCache(final int maxSize) {
+        return Collections.synchronizedMap(new LinkedHashMap<String, SanitizedText>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SanitizedText> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    private static String getSanitizedCacheKey(String html, Level level, boolean addBlankTarget) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        byte[] hash = digest.digest(html.getBytes(StandardCharsets.UTF_8));
+        return level + ":" + addBlankTarget + ":" + Base64.getEncoder().encodeToString(hash);
+    }
+
+    /** The cleaned html and the (already decoded) scan error messages for it */
+    private static final class SanitizedText {
+        final String html;
+        final String errors;
+
+        SanitizedText(String html, String errors) {
+            this.html = html;
+            this.errors = errors;
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.sakaiproject.utils.impl.FormattedText#escapeHtmlFormattedText(java.lang.String)
      */
@@ -535,25 +734,7 @@ public class FormattedTextImpl implements FormattedText
         //value = M_patternAnchorTag.matcher(value).replaceAll("$1$2$3 target=\"_blank\">"); // adds in blank targets
         // added for KNL-526
 
-        if (addBlankTargetToLinks()) {
-            Matcher m = M_patternAnchorTagWithOutTargetAndWithHrefAndHrefNotStartingWithHash.matcher(value);
-            if (m.find()) {
-                if (StringUtils.isNotBlank(referrerPolicy)) {
-                    value = m.replaceAll("$1$2 target=\"_blank\" rel=\"" + referrerPolicy + "\">"); // adds a target and rel to A tags without one
-                } else {
-                    value = m.replaceAll("$1$2 target=\"_blank\">"); // adds a target to A tags without one
-                }
-            }
-        }
-
-        // If there is a referrer policy defined...
-        if (StringUtils.isNotBlank(referrerPolicy) && StringUtils.isNotBlank(value)) {
-            // If the A tag contains target="_blank" but is not accompanied by a rel attribute, add it
-            Matcher m = M_patternAnchorTagWithTargetBlankAndWithOutRel.matcher(value);
-            if (m.find()) {
-                value = m.replaceAll("$1$2$3 rel=\"" + referrerPolicy + "\">"); // adds a rel to A tags without one
-            }
-        }
+        value = rewriteAnchorTags(value, addBlankTargetToLinks());
 
         return value;
     }
@@ -574,8 +755,6 @@ public class FormattedTextImpl implements FormattedText
         return escapeHtml(value, true);
     }
 
-    private final boolean LAZY_CONSTRUCTION = true;
-
     /* (non-Javadoc)
      * @see org.sakaiproject.util.api.FormattedText#escapeHtml(java.lang.String)
      */
@@ -591,16 +770,88 @@ public class FormattedTextImpl implements FormattedText
          * Velocity tools depend on this returning empty string (and never null),
          * they also depend on this handling a null input and converting it to null
          */
-        String val = "";
-        if (value != null && !"".equals(value)) {
-            val = StringEscapeUtils.escapeHtml(value);
-            if (escapeNewlines && val != null) {
-                val = val.replace("\n", "<br/>\n");
-            }
+        if (value == null || value.length() == 0) {
+            return "";
         }
-        return val;
+        int first = indexOfHtmlEscape(value, escapeNewlines);
+        if (first == value.length()) {
+            return value;
+        }
+        StringBuilder buf = new StringBuilder(value.length() + 16);
+        buf.append(value, 0, first);
+        appendEscapedHtml(value, first, escapeNewlines, buf);
+        return buf.toString();
     } // escapeHtml
 
+    /**
+     * Appends the value escaped like {@link #escapeHtml(String, boolean)} does, without creating an intermediate string.
+     * 
+     * @param value
+     *        The text to escape, null appends nothing
+     * @param escapeNewlines
+     *        If true, newlines are appended as "&lt;br/&gt;\n"
+     * @param out
+     *        Where the escaped text is appended
+     */
+    public void escapeHtml(String value, boolean escapeNewlines, StringBuilder out) {
+        if (value != null) {
+            appendEscapedHtml(value, 0, escapeNewlines, out);
+        }
+    }
+
+    /**
+     * @return the index of the first character escapeHtml has to change, or the length of the value
+     */
+    private static int indexOfHtmlEscape(String value, boolean escapeNewlines) {
+        final int len = value.length();
+        for (int i = 0; i < len; i++) {
+            char c = value.charAt(i);
+            if (c >= 128 || !M_htmlSafeAscii[c] || (escapeNewlines && c == '\n')) {
+                return i;
+            }
+        }
+        return len;
+    }
+
+    /**
+     * Escapes like StringEscapeUtils.escapeHtml (named HTML 4.0 entities, numeric references for the rest of non ASCII),
+     * except that a surrogate pair is written as a single reference to its code point.
+     */
+    private static void appendEscapedHtml(String value, int from, boolean escapeNewlines, StringBuilder out) {
+        final String[] named = HtmlEntities.NAMED;
+        final int len = value.length();
+        for (int i = from; i < len; i++) {
+            char c = value.charAt(i);
+            if (c < 128 && M_htmlSafeAscii[c]) {
+                if (escapeNewlines && c == '\n') {
+                    out.append("<br/>\n");
+                } else {
+                    out.append(c);
+                }
+            } else if (c < named.length && named[c] != null) {
+                out.append(named[c]);
+            } else {
+                i = appendNumericCharacterReference(value, i, out);
+            }
+        }
+    }
+
+    /**
+     * Appends an HTML numeric character reference like "&amp;#15672;" for the character at the index,
+     * or for the code point of the surrogate pair starting there.
+     * 
+     * @return the index of the last character used
+     */
+    private static int appendNumericCharacterReference(String value, int i, StringBuilder out) {
+        int codePoint = value.charAt(i);
+        if (Character.isHighSurrogate((char) codePoint) && i + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(i + 1))) {
+            codePoint = Character.toCodePoint((char) codePoint, value.charAt(++i));
+        }
+        out.append("&#").append(codePoint).append(';');
+        return i;
+    }
+
     /* (non-Javadoc)
      * @see org.sakaiproject.utils.impl.FormattedText#encodeFormattedTextAttribute(org.w3c.dom.Element, java.lang.String, java.lang.String)
      */
@@ -621,37 +872,51 @@ public class FormattedTextImpl implements FormattedText
         // TODO call method in each process routine
         if (value == null) return "";
 
-        try
+        // only allocate if changes are actually made;
+        // otherwise just return the given string without changing it.
+        final int len = value.length();
+        int first = 0;
+        while (first < len && value.charAt(first) < 128)
         {
-            // lazily allocate the StringBuilder
-            // only if changes are actually made; otherwise
-            // just return the given string without changing it.
-            StringBuilder buf = (LAZY_CONSTRUCTION) ? null : new StringBuilder();
-            final int len = value.length();
-            for (int i = 0; i < len; i++)
-            {
-                char c = value.charAt(i);
-                if (c < 128)
-                {
-                    if (buf != null) buf.append(c);
-                }
-                else
-                {
-                    // escape higher Unicode characters using an
-                    // HTML numeric character entity reference like "&#15672;"
-                    if (buf == null) buf = new StringBuilder(value.substring(0, i));
-                    buf.append("&#");
-                    buf.append(Integer.toString((int) c));
-                    buf.append(";");
-                }
-            } // for
-
-            return (buf == null) ? value : buf.toString();
+            first++;
         }
-        catch (Exception e)
+        if (first == len) return value;
+
+        StringBuilder buf = new StringBuilder(len + 16);
+        buf.append(value, 0, first);
+        appendEncodedUnicode(value, first, buf);
+        return buf.toString();
+    }
+
+    /**
+     * Appends the value encoded like {@link #encodeUnicode(String)} does, without creating an intermediate string.
+     * 
+     * @param value
+     *        The text to encode, null appends nothing
+     * @param out
+     *        Where the encoded text is appended
+     */
+    public void encodeUnicode(String value, StringBuilder out)
+    {
+        if (value != null) appendEncodedUnicode(value, 0, out);
+    }
+
+    private static void appendEncodedUnicode(String value, int from, StringBuilder out)
+    {
+        final int len = value.length();
+        for (int i = from; i < len; i++)
         {
-            log.error("Validator.escapeHtml: ", e);
-            return "";
+            char c = value.charAt(i);
+            if (c < 128)
+            {
+                out.append(c);
+            }
+            else
+            {
+                // escape higher Unicode characters using an
+                // HTML numeric character entity reference like "&#15672;"
+                i = appendNumericCharacterReference(value, i, out);
+            }
         }
     }
 
@@ -661,11 +926,52 @@ public class FormattedTextImpl implements FormattedText
     public String unEscapeHtml(String value)
     {
         if (value == null || value.equals("")) return "";
-        value = value.replaceAll("&lt;", "<");
-        value = value.replaceAll("&gt;", ">");
-        value = value.replaceAll("&amp;", "&");
-        value = value.replaceAll("&quot;", "\"");
-        return value;
+        int amp = value.indexOf('&');
+        if (amp < 0) return value;
+
+        // one pass doing what replacing "&lt;", "&gt;", "&amp;" and "&quot;" one after the other did,
+        // so "&amp;quot;" still ends up as a quote
+        final int len = value.length();
+        StringBuilder buf = new StringBuilder(len);
+        buf.append(value, 0, amp);
+        for (int i = amp; i < len; i++)
+        {
+            char c = value.charAt(i);
+            if (c != '&')
+            {
+                buf.append(c);
+            }
+            else if (value.startsWith("&lt;", i))
+            {
+                buf.append('<');
+                i += 3;
+            }
+            else if (value.startsWith("&gt;", i))
+            {
+                buf.append('>');
+                i += 3;
+            }
+            else if (value.startsWith("&amp;quot;", i))
+            {
+                buf.append('"');
+                i += 9;
+            }
+            else if (value.startsWith("&amp;", i))
+            {
+                buf.append('&');
+                i += 4;
+            }
+            else if (value.startsWith("&quot;", i))
+            {
+                buf.append('"');
+                i += 5;
+            }
+            else
+            {
+                buf.append(c);
+            }
+        }
+        return buf.toString();
     }
 
     /* (non-Javadoc)
@@ -1463,6 +1769,32 @@ public class FormattedTextImpl implements FormattedText
         throw new IllegalArgumentException("Invalid digit:" + i);
     }
 
+    /** ASCII characters which escapeHtml leaves as they are (all but '"', '&', '<' and '>') */
+    private static final boolean[] M_htmlSafeAscii = new boolean[128];
+    static {
+        Arrays.fill(M_htmlSafeAscii, true);
+        M_htmlSafeAscii['"'] = false;
+        M_htmlSafeAscii['&'] = false;
+        M_htmlSafeAscii['<'] = false;
+        M_htmlSafeAscii['>'] = false;
+    }
+
+    /**
+     * The named entities StringEscapeUtils.escapeHtml writes, indexed by character, taken from it so the output stays the same.
+     * All of the HTML 4.0 entities are below U+2800. Loaded on first use.
+     */
+    private static final class HtmlEntities {
+        static final String[] NAMED = new String[0x2800];
+        static {
+            for (char c = 0; c < NAMED.length; c++) {
+                String escaped = StringEscapeUtils.escapeHtml(String.valueOf(c));
+                if (escaped.length() > 1 && !escaped.startsWith("&#")) {
+                    NAMED[c] = escaped;
+                }
+            }
+        }
+    }
+
     /**
      * HTML character entity references. These abbreviations are used in HTML to escape certain Unicode characters, including characters used in HTML markup. These character entity references were taken directly from the HTML 4.0 specification at:
      * 
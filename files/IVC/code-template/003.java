@@ -3,11 +3,21 @@ package org.ironrhino.core.jdbc;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.annotation.PostConstruct;
@@ -69,6 +79,22 @@ public class JdbcUpdateService {
 
 	private boolean supportsBatchUpdates;
 
+	@Setter
+	@Value("${jdbcUpdateService.metadataCacheTtl:300000}")
+	private long metadataCacheTtl = 300000;
+
+	@Setter
+	@Value("${jdbcUpdateService.validatedCacheSize:1000}")
+	private int validatedCacheSize = 1000;
+
+	// lower cased catalog.schema.table -> lower cased column name -> java.sql.Types
+	private final Map<String, Map<String, Integer>> columnTypesCache = new ConcurrentHashMap<>();
+
+	// normalized sql -> validated
+	private final Map<String, Boolean> validatedCache = new ConcurrentHashMap<>();
+
+	private volatile long metadataCacheExpiresAt;
+
 	@NonNull
 	public DataSource getDataSource() {
 		Assert.notNull(jdbcTemplate, "JdbcTemplate should be present");
@@ -112,7 +138,13 @@ public class JdbcUpdateService {
 	@Transactional
 	public void validate(String sql) {
 		sql = SqlUtils.trim(sql);
-		Map<String, String> parameters = SqlUtils.extractParametersWithType(sql, getDataSource());
+		checkMetadataCacheExpiration();
+		String key = normalize(sql);
+		if (validatedCache.containsKey(key))
+			return;
+		Map<String, String> parameters = inferParametersWithType(sql);
+		if (parameters == null)
+			parameters = SqlUtils.extractParametersWithType(sql, getDataSource());
 		Map<String, Object> paramMap = new HashMap<>();
 		for (Map.Entry<String, String> entry : parameters.entrySet()) {
 			String name = entry.getKey();
@@ -158,6 +190,9 @@ public class JdbcUpdateService {
 				}
 			}
 		}
+		if (validatedCache.size() >= validatedCacheSize)
+			validatedCache.clear();
+		validatedCache.put(key, Boolean.TRUE);
 	}
 
 	private void validateAndConvertTypes(String sql, Map<String, Object> paramMap) {
@@ -211,6 +246,8 @@ public class JdbcUpdateService {
 		long time = System.currentTimeMillis();
 		result[0] = namedParameterJdbcTemplate.update(sql, paramMap);
 		result[1] = (int) (System.currentTimeMillis() - time);
+		if (isDdl(sql))
+			invalidateMetadataCache();
 		return result;
 	}
 
@@ -237,14 +274,198 @@ public class JdbcUpdateService {
 				}
 			}
 		}
+		int[] result;
 		if (batch)
-			return jdbcTemplate.batchUpdate(sql);
+			result = jdbcTemplate.batchUpdate(sql);
 		else {
-			int[] result = new int[sql.length];
+			result = new int[sql.length];
 			for (int i = 0; i < sql.length; i++)
 				result[i] = jdbcTemplate.update(sql[i]);
-			return result;
 		}
+		for (String s : sql) {
+			if (isDdl(s)) {
+				invalidateMetadataCache();
+				break;
+			}
+		}
+		return result;
+	}
+
+	public void invalidateMetadataCache() {
+		columnTypesCache.clear();
+		validatedCache.clear();
+		metadataCacheExpiresAt = System.currentTimeMillis() + metadataCacheTtl;
+	}
+
+	private void checkMetadataCacheExpiration() {
+		if (System.currentTimeMillis() >= metadataCacheExpiresAt)
+			invalidateMetadataCache();
+	}
+
+	/**
+	 * Infer parameter types from cached column types of the tables the
+	 * statement refers to.
+	 *
+	 * @return null if some parameter type can't be inferred
+	 */
+	private Map<String, String> inferParametersWithType(String sql) {
+		Set<String> names = new LinkedHashSet<>();
+		Matcher m = PARAMETER_PATTERN.matcher(sql);
+		while (m.find())
+			names.add(m.group(1));
+		if (names.isEmpty())
+			return Collections.emptyMap();
+		// lower cased alias, table name or qualified table name -> table as written
+		Map<String, String> tables = new LinkedHashMap<>();
+		m = TABLE_PATTERN.matcher(sql);
+		while (m.find()) {
+			String table = m.group(1);
+			tables.putIfAbsent(unquote(table), table);
+			tables.putIfAbsent(unquote(table.substring(table.lastIndexOf('.') + 1)), table);
+			String alias = m.group(2);
+			if (alias != null && !ALIAS_STOP_WORDS.contains(alias.toLowerCase(Locale.ROOT)))
+				tables.put(alias.toLowerCase(Locale.ROOT), table);
+		}
+		Map<String, String> columns = new HashMap<>();
+		m = COMPARISON_PATTERN.matcher(sql);
+		while (m.find())
+			columns.putIfAbsent(m.group(2), m.group(1));
+		m = INSERT_PATTERN.matcher(sql);
+		while (m.find()) {
+			String[] cols = m.group(2).split(",");
+			String[] values = m.group(3).split(",");
+			if (cols.length != values.length)
+				continue;
+			for (int i = 0; i < cols.length; i++) {
+				String value = values[i].trim();
+				if (value.startsWith(":") && !value.startsWith("::"))
+					columns.putIfAbsent(value.substring(1), m.group(1) + "." + cols[i].trim());
+			}
+		}
+		Map<String, String> parameters = new LinkedHashMap<>();
+		for (String name : names) {
+			String column = columns.get(name);
+			if (column == null)
+				return null;
+			Integer sqlType = getColumnType(tables, column);
+			if (sqlType == null)
+				return null;
+			parameters.put(name, toParameterType(sqlType));
+		}
+		return parameters;
+	}
+
+	/**
+	 * @return null if the column's table is unknown, outside of the configured
+	 *         schema or ambiguous
+	 */
+	private Integer getColumnType(Map<String, String> tables, String column) {
+		int index = column.lastIndexOf('.');
+		String columnName = unquote(column.substring(index + 1));
+		if (index > 0) {
+			String table = tables.get(unquote(column.substring(0, index)));
+			if (table == null)
+				return null;
+			Map<String, Integer> columnTypes = getColumnTypes(table);
+			return columnTypes != null ? columnTypes.get(columnName) : null;
+		}
+		Integer sqlType = null;
+		for (String table : new LinkedHashSet<>(tables.values())) {
+			Map<String, Integer> columnTypes = getColumnTypes(table);
+			if (columnTypes == null)
+				return null;
+			Integer type = columnTypes.get(columnName);
+			if (type != null) {
+				if (sqlType != null)
+					return null; // ambiguous
+				sqlType = type;
+			}
+		}
+		return sqlType;
+	}
+
+	/**
+	 * @return null if the table is not in the configured catalog and schema
+	 */
+	private Map<String, Integer> getColumnTypes(String table) {
+		String[] arr = table.split("\\.");
+		if (arr.length > 3)
+			return null;
+		if (arr.length == 3 && !unquote(arr[0]).equalsIgnoreCase(catalog))
+			return null;
+		if (arr.length >= 2) {
+			String prefix = unquote(arr[arr.length - 2]);
+			if (!prefix.equalsIgnoreCase(schema) && !(arr.length == 2 && prefix.equalsIgnoreCase(catalog)))
+				return null;
+		}
+		String name = unquote(arr[arr.length - 1]);
+		String key = (catalog + "." + schema + "." + name).toLowerCase(Locale.ROOT);
+		return columnTypesCache.computeIfAbsent(key, k -> loadColumnTypes(name));
+	}
+
+	private Map<String, Integer> loadColumnTypes(String table) {
+		Map<String, Integer> columnTypes = new HashMap<>();
+		Connection con = DataSourceUtils.getConnection(getDataSource());
+		try {
+			DatabaseMetaData dbmd = con.getMetaData();
+			for (String name : new String[] { table, table.toUpperCase(Locale.ROOT) }) {
+				try (ResultSet rs = dbmd.getColumns(catalog, schema, name, null)) {
+					while (rs.next())
+						columnTypes.put(rs.getString("COLUMN_NAME").toLowerCase(Locale.ROOT), rs.getInt("DATA_TYPE"));
+				}
+				if (!columnTypes.isEmpty())
+					break;
+			}
+		} catch (SQLException e) {
+			log.warn(e.getMessage(), e);
+		} finally {
+			DataSourceUtils.releaseConnection(con, getDataSource());
+		}
+		return columnTypes;
+	}
+
+	private String unquote(String identifier) {
+		return identifier.replace(quoteString, "").replace("`", "").replace("[", "").replace("]", "")
+				.toLowerCase(Locale.ROOT);
+	}
+
+	private static String toParameterType(int sqlType) {
+		switch (sqlType) {
+		case Types.DATE:
+			return "date";
+		case Types.TIME:
+		case Types.TIMESTAMP:
+		case Types.TIME_WITH_TIMEZONE:
+		case Types.TIMESTAMP_WITH_TIMEZONE:
+			return "timestamp";
+		case Types.TINYINT:
+		case Types.SMALLINT:
+		case Types.INTEGER:
+			return "integer";
+		case Types.BIGINT:
+			return "long";
+		case Types.FLOAT:
+		case Types.REAL:
+		case Types.DOUBLE:
+			return "double";
+		case Types.NUMERIC:
+		case Types.DECIMAL:
+			return "decimal";
+		case Types.BOOLEAN:
+			return "boolean";
+		case Types.BIT:
+			return "bit";
+		default:
+			return "string";
+		}
+	}
+
+	private static String normalize(String sql) {
+		return WHITESPACE_PATTERN.matcher(sql).replaceAll(" ");
+	}
+
+	private static boolean isDdl(String sql) {
+		return DDL_PATTERN.matcher(sql).find();
 	}
 
 	private static String appendFalseClause(String sql) {
@@ -266,4 +487,25 @@ public class JdbcUpdateService {
 	private static final Pattern CREATE_OR_ALTER_PROCEDURE_OR_FUNCTION_PATTERN = Pattern
 			.compile("(create|alter)\\s+(procedure|function)", Pattern.CASE_INSENSITIVE);
 
+	private static final Pattern DDL_PATTERN = Pattern.compile("^\\s*(create|alter|drop|truncate|rename)\\s",
+			Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
+
+	private static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
+
+	private static final Pattern PARAMETER_PATTERN = Pattern.compile("(?<![:\\w]):(\\w+)");
+
+	private static final Pattern TABLE_PATTERN = Pattern.compile(
+			"\\b(?:update|into|from|join)\\s+([\\w.\"`\\[\\]]+)(?:\\s+(?:as\\s+)?(\\w+))?", Pattern.CASE_INSENSITIVE);
+
+	private static final Set<String> ALIAS_STOP_WORDS = new HashSet<>(Arrays.asList("set", "where", "values", "on",
+			"using", "inner", "left", "right", "full", "outer", "cross", "natural", "join", "group", "order", "having",
+			"limit", "union", "select", "default"));
+
+	private static final Pattern COMPARISON_PATTERN = Pattern.compile(
+			"([\\w.\"`\\[\\]]+)\\s*(?:=|<>|!=|<=|>=|<|>|\\blike\\b)\\s*:(\\w+)", Pattern.CASE_INSENSITIVE);
+
+	private static final Pattern INSERT_PATTERN = Pattern.compile(
+			"\\binsert\\s+into\\s+([\\w.\"`\\[\\]]+)\\s*\\(([^)]*)\\)\\s*values\\s*\\(([^)]*)\\)",
+			Pattern.CASE_INSENSITIVE);
+
 }
@@ -4,15 +4,27 @@ import javassist.*;
 import sun.misc.Unsafe;
 import water.api.API;
 import water.nbhm.UtilUnsafe;
+import water.util.Log;
 
+import java.io.*;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
 
 /** Class to auto-gen serializer delegate classes.  */
 public class Weaver {
@@ -56,6 +68,21 @@ public class Weaver {
    */
   private static final transient Map<String/*className*/, ClassPath> CLASSPATHS;
 
+  /** System property naming a directory of pre-generated {@link Icer} classes.
+   *  Icers found there with a matching checksum are loaded instead of being
+   *  generated; newly generated Icers are written back.  Unset means no cache. */
+  public static final String ICER_CACHE_DIR_PROP = "water.weaver.icerCacheDir";
+  private static final int ICER_CACHE_MAGIC = 0x1CE4CA52; // Entries keyed by SHA-256
+  private static final int ICER_CACHE_VERSION = 2;
+  private static final File ICER_CACHE_DIR = icerCacheDir();
+
+  /** System property selecting the {@link Icer} backend: "javassist" (the
+   *  default) generates and compiles source per class, "methodhandle" composes
+   *  per-field {@link MethodHandle}s instead.  Both use the same wire format;
+   *  classes the MethodHandle backend does not handle fall back to Javassist. */
+  public static final String BACKEND_PROP = "water.weaver.backend";
+  private static final boolean USE_METHOD_HANDLES = "methodhandle".equals(System.getProperty(BACKEND_PROP));
+
   static Class classForName(String className) throws ClassNotFoundException {
     ClassLoader c = CLASSLOADERS.get(className);  // was this class dynamically loaded?
     if( c==null ) return Class.forName(className); // class not dynamically loaded, use Weaver's ClassLoader
@@ -79,10 +106,30 @@ public class Weaver {
   }
 
 
+  /** Pre-generate the Icers of the given {@link Freezable} classes into the
+   *  {@link #ICER_CACHE_DIR_PROP} directory, e.g. at build time.  The cached
+   *  Icers embed their type ids, so this only pays off for types whose ids are
+   *  stable across clouds (the bootstrap types); others are re-woven at runtime
+   *  whenever their id differs.
+   *  <pre>java -Dwater.weaver.icerCacheDir=DIR water.Weaver water.Key ...</pre>
+   */
+  public static void main( String[] args ) throws ClassNotFoundException {
+    if( ICER_CACHE_DIR == null ) throw new IllegalArgumentException("-D"+ICER_CACHE_DIR_PROP+"=DIR is required");
+    for( String name : args ) {
+      Class clz = Class.forName(name);
+      if( !Freezable.class.isAssignableFrom(clz) ) throw new IllegalArgumentException(name+" is not a Freezable");
+      genDelegate(TypeMap.onIce(name),clz);
+    }
+  }
+
   public static <T extends Freezable> Icer<T> genDelegate( int id, Class<T> clazz ) {
     Exception e2;
     try {
       T ice = Modifier.isAbstract(clazz.getModifiers()) ? null : (T)_unsafe.allocateInstance(clazz);
+      if( USE_METHOD_HANDLES ) {
+        Icer<T> icer = MethodHandleIcer.make(id,clazz,ice);
+        if( icer != null ) return icer;
+      }
       Class icer_clz = javassistLoadClass(id,clazz);
       return (Icer<T>)icer_clz.getDeclaredConstructors()[0].newInstance(ice);
     }
@@ -232,12 +279,109 @@ public class Weaver {
     synchronized( iced_clazz ) {
       icer_cc = _pool.getOrNull(icer_name); // Retry under lock
       if( icer_cc != null ) return Class.forName(icer_name); // Found a pre-cooked Icer implementation
-      icer_cc = genIcerClass(id,iced_cc,iced_clazz,icer_name,super_id,super_icer_cc,super_has_jfields);
-      icer_cc.toClass(iced_clazz.getClassLoader());               // Load class (but does not link & init)
+      byte[] key = ICER_CACHE_DIR == null ? null : icerCacheKey(id,super_id,iced_clazz);
+      icer_cc = loadCachedIcer(icer_name,key); // Woven by an earlier run?
+      if( icer_cc != null ) {
+        icer_cc.toClass(iced_clazz.getClassLoader());
+      } else {
+        icer_cc = genIcerClass(id,iced_cc,iced_clazz,icer_name,super_id,super_icer_cc,super_has_jfields);
+        icer_cc.toClass(iced_clazz.getClassLoader());               // Load class (but does not link & init)
+        storeCachedIcer(icer_cc,key);
+      }
       return Class.forName(icer_name,true, iced_clazz.getClassLoader()); // Initialize class now, before subclasses
     }
   }
 
+  private static File icerCacheDir() {
+    String dir = System.getProperty(ICER_CACHE_DIR_PROP);
+    if( dir == null ) return null;
+    File f = new File(dir);
+    f.mkdirs();
+    return f.isDirectory() ? f : null;
+  }
+
+  // SHA-256 over everything a generated Icer depends on: the bytecode of the
+  // Iced class and its Freezable supers, the type ids baked into the method
+  // names, the JVM flavor, and the actual Unsafe offsets of the instance
+  // fields.  The offsets are hard-coded in the Icer and also move with VM flags
+  // (compressed class pointers, object alignment, header layout) that the JVM
+  // flavor does not show, so they are hashed as observed in this VM.
+  private static byte[] icerCacheKey( int id, int super_id, Class iced_clazz ) throws NotFoundException {
+    MessageDigest md;
+    try { md = MessageDigest.getInstance("SHA-256"); }
+    catch( NoSuchAlgorithmException e ) { throw new RuntimeException(e); }
+    byte[] buf = new byte[4096];
+    StringBuilder env = new StringBuilder();
+    env.append(ICER_CACHE_VERSION).append(' ').append(id).append(' ').append(super_id).append(' ')
+       .append(System.getProperty("java.vm.name")).append(' ').append(System.getProperty("java.version")).append(' ')
+       .append(System.getProperty("os.arch")).append(' ').append(_unsafe.arrayIndexScale(Object[].class));
+    for( Class c = iced_clazz; c != null && Freezable.class.isAssignableFrom(c); c = c.getSuperclass() ) {
+      try( InputStream is = _pool.openClassfile(c.getName()) ) {
+        if( is == null ) throw new NotFoundException(c.getName());
+        int len;
+        while( (len=is.read(buf)) != -1 ) md.update(buf,0,len);
+      } catch( IOException e ) { throw new NotFoundException(c.getName(),e); }
+      TreeMap<String,Long> offs = new TreeMap<>(); // Sorted, getDeclaredFields has no fixed order
+      for( Field f : c.getDeclaredFields() )
+        if( !Modifier.isStatic(f.getModifiers()) )
+          offs.put(f.getName(),_unsafe.objectFieldOffset(f));
+      env.append(' ').append(c.getName()).append(offs);
+    }
+    md.update(env.toString().getBytes(StandardCharsets.UTF_8));
+    return md.digest();
+  }
+
+  private static File icerCacheFile( String icer_name ) {
+    return new File(ICER_CACHE_DIR, icer_name+".icer");
+  }
+
+  // Cache entry layout: magic, SHA-256 key, class length, class bytes, CRC of the class
+  // bytes.  Entries with any mismatch are ignored, and re-woven.
+  private static CtClass loadCachedIcer( String icer_name, byte[] key ) {
+    if( ICER_CACHE_DIR == null ) return null;
+    File f = icerCacheFile(icer_name);
+    if( !f.exists() ) return null;
+    try( DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(f))) ) {
+      if( dis.readInt() != ICER_CACHE_MAGIC ) return null; // Other format
+      byte[] cached_key = new byte[key.length];
+      dis.readFully(cached_key);
+      if( !Arrays.equals(cached_key,key) ) return null; // Stale
+      byte[] bytes = new byte[dis.readInt()];
+      dis.readFully(bytes);
+      CRC32 crc = new CRC32();
+      crc.update(bytes);
+      if( dis.readLong() != crc.getValue() ) return null; // Corrupt
+      CtClass icer_cc = _pool.makeClass(new ByteArrayInputStream(bytes));
+      if( !icer_cc.getName().equals(icer_name) ) { icer_cc.detach(); return null; }
+      return icer_cc;
+    } catch( IOException | RuntimeException e ) {
+      Log.warn("Ignoring Icer cache entry "+f+": "+e);
+      return null;
+    }
+  }
+
+  private static void storeCachedIcer( CtClass icer_cc, byte[] key ) {
+    if( ICER_CACHE_DIR == null ) return;
+    File f = icerCacheFile(icer_cc.getName());
+    File tmp = new File(f.getPath()+"."+Thread.currentThread().getId()+".tmp");
+    try {
+      byte[] bytes = icer_cc.toBytecode();
+      CRC32 crc = new CRC32();
+      crc.update(bytes);
+      try( DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp))) ) {
+        dos.writeInt(ICER_CACHE_MAGIC);
+        dos.write(key);
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+        dos.writeLong(crc.getValue());
+      }
+      if( !tmp.renameTo(f) ) tmp.delete(); // Lost a race with another writer
+    } catch( IOException | CannotCompileException e ) {
+      tmp.delete();
+      Log.warn("Unable to cache Icer "+icer_cc.getName()+": "+e);
+    }
+  }
+
   // Generate the Icer class
   private static CtClass genIcerClass(int id, CtClass iced_cc, Class iced_clazz, String icer_name, int super_id, CtClass super_icer, boolean super_has_jfields ) throws CannotCompileException, NotFoundException, NoSuchFieldException {
     // Generate the Icer class
@@ -584,5 +728,253 @@ public class Weaver {
     return new RuntimeException(ct.getSimpleName()+"."+sig+": Serialization not implemented");
   }
 
-}
+  // An Icer composed of MethodHandles instead of generated source.  The levels
+  // run from the topmost Freezable superclass down, exactly like the chain of
+  // write<super_id> calls in a generated Icer, and each level visits the same
+  // fields in the same (class file) order with the same AutoBuffer calls - so
+  // the wire format is unchanged.
+  private static final class MethodHandleIcer<T extends Freezable> extends Icer<T> {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType WRITE_FIELD = MethodType.methodType(void.class, AutoBuffer.class, Object.class);
+    private static final MethodType READ_FIELD  = MethodType.methodType(void.class, Object.class, AutoBuffer.class);
+    private static final MethodType COPY_FIELD  = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType CUSTOM      = MethodType.methodType(Object.class, Object.class, AutoBuffer.class);
+
+    private final int _id;
+    private final String _className;
+    private final Level[] _levels;
+
+    private MethodHandleIcer( T iced, int id, String className, Level[] levels ) {
+      super(iced);
+      _id = id;
+      _className = className;
+      _levels = levels;
+    }
+
+    // Returns null for shapes only the generated code handles, and for classes
+    // with a pre-cooked Icer class file at any level: javassistLoadClass uses
+    // those, and their wire format need not match the woven one.  (Icers woven
+    // in this run are in the pool too, but have no class file.)
+    static <T extends Freezable> Icer<T> make( int id, Class<T> clazz, T ice ) {
+      try {
+        ArrayList<Level> levels = new ArrayList<>();
+        for( Class c = clazz; c != null && Freezable.class.isAssignableFrom(c); c = c.getSuperclass() ) {
+          if( _pool.find(implClazzName(c.getName())) != null ) return null;
+          levels.add(0,new Level(c,_pool.get(c.getName())));
+        }
+        return new MethodHandleIcer<>(ice,id,clazz.getName(),levels.toArray(new Level[levels.size()]));
+      } catch( UnsupportedOperationException | ReflectiveOperationException | NotFoundException e ) {
+        return null;
+      }
+    }
 
+    @Override protected AutoBuffer write( AutoBuffer ab, T ice ) {
+      try {
+        AutoBuffer res = ab;
+        for( Level l : _levels ) {
+          Impl impl = l._write;
+          res = ab;
+          if( impl._custom != null ) res = (AutoBuffer)(Object)impl._custom.invokeExact((Object)ice,ab);
+          else for( MethodHandle mh : impl._fields ) mh.invokeExact(ab,(Object)ice);
+        }
+        return res;
+      } catch( Throwable t ) { throw rethrow(t); }
+    }
+
+    @Override protected AutoBuffer writeJSON( AutoBuffer ab, T ice ) {
+      try {
+        ab.put1('{');
+        int start = ab.position();
+        AutoBuffer res = ab;
+        for( int i = 0; i < _levels.length; i++ ) {
+          Impl impl = _levels[i]._writeJSON;
+          boolean supers = ab.position() != start;
+          res = ab;
+          if( impl._custom != null ) {
+            if( i > 0 && supers ) {
+              ab.put1(',');
+              int pos = ab.position();
+              Object ignored = (Object)impl._custom.invokeExact((Object)ice,ab);
+              if( ab.position() == pos ) ab.position(pos-1); // empty json serialization, drop the comma
+            } else
+              res = (AutoBuffer)(Object)impl._custom.invokeExact((Object)ice,ab);
+          } else {
+            for( int j = 0; j < impl._fields.length; j++ ) {
+              if( j > 0 || supers ) ab.put1(',');
+              impl._fields[j].invokeExact(ab,(Object)ice);
+            }
+          }
+        }
+        return res.put1('}');
+      } catch( Throwable t ) { throw rethrow(t); }
+    }
+
+    @Override protected T read( AutoBuffer ab, T ice ) { return read(ab,ice,false); }
+    @Override protected T readJSON( AutoBuffer ab, T ice ) { return read(ab,ice,true); }
+
+    private T read( AutoBuffer ab, T ice, boolean json ) {
+      try {
+        Object res = ice;
+        for( Level l : _levels ) {
+          Impl impl = json ? l._readJSON : l._read;
+          res = ice;
+          if( impl._custom != null ) res = (Object)impl._custom.invokeExact((Object)ice,ab);
+          else for( MethodHandle mh : impl._fields ) mh.invokeExact((Object)ice,ab);
+        }
+        return (T)res;
+      } catch( Throwable t ) { throw rethrow(t); }
+    }
+
+    @Override protected void copyOver( T dst, T src ) {
+      super.copyOver(dst,src);
+      try {
+        for( Level l : _levels )
+          if( l._copy != null )
+            for( MethodHandle mh : l._copy ) mh.invokeExact((Object)dst,(Object)src);
+      } catch( Throwable t ) { throw rethrow(t); }
+    }
+
+    @Override protected String className() { return _className; }
+    @Override protected int frozenType() { return _id; }
+    @Override protected void compute1( H2O.H2OCountedCompleter dt ) { dt.compute1(); }
+
+    private static RuntimeException rethrow( Throwable t ) {
+      if( t instanceof RuntimeException ) return (RuntimeException)t;
+      if( t instanceof Error ) throw (Error)t;
+      return new RuntimeException(t);
+    }
+
+    // One class in the Freezable hierarchy
+    private static final class Level {
+      final Impl _write, _writeJSON, _read, _readJSON;
+      final MethodHandle[] _copy; // Only DTasks copy their fields over
+      Level( Class c, CtClass cc ) throws ReflectiveOperationException, NotFoundException {
+        _write     = new Impl(c,cc,"write");
+        _writeJSON = new Impl(c,cc,"writeJSON");
+        _read      = new Impl(c,cc,"read");
+        _readJSON  = new Impl(c,cc,"readJSON");
+        if( DTask.class.isAssignableFrom(c) ) {
+          if( customMethod(c,"copyOver_impl") != null ) throw new UnsupportedOperationException("copyOver_impl");
+          _copy = fields(c,cc,"copyOver");
+        } else _copy = null;
+      }
+    }
+
+    // One of write, writeJSON, read or readJSON for a single level: either a
+    // custom serializer, or one handle per woven field.
+    private static final class Impl {
+      final MethodHandle _custom;   // (Object ice, AutoBuffer ab)Object
+      final MethodHandle[] _fields;
+      Impl( Class c, CtClass cc, String impl ) throws ReflectiveOperationException, NotFoundException {
+        Method m = customMethod(c,impl+"_impl");
+        MethodHandle custom = null;
+        MethodHandle[] fields = new MethodHandle[0];
+        if( m == null ) {
+          fields = fields(c,cc,impl);
+        } else {
+          int mods = m.getModifiers();
+          if( !Modifier.isStatic(mods) && !Modifier.isFinal(mods) && !Modifier.isAbstract(mods) )
+            throw barf(cc," Custom serialization methods must be declared either static or final. Failed for method " + m.getName());
+          // An abstract custom serializer adds nothing at this level
+          if( !Modifier.isAbstract(mods) && !m.isBridge() ) {
+            m.setAccessible(true);
+            custom = MethodHandles.explicitCastArguments(LOOKUP.unreflect(m),CUSTOM);
+          }
+        }
+        _custom = custom;
+        _fields = fields;
+      }
+    }
+
+    private static Method customMethod( Class c, String name ) {
+      Method found = null;
+      for( Method m : c.getDeclaredMethods() )
+        if( m.getName().equals(name) ) {
+          if( found != null ) throw new UnsupportedOperationException(c.getName()+"."+name+" is overloaded");
+          found = m;
+        }
+      return found;
+    }
+
+    // Field handles in class file order, with the same filtering as make_body
+    private static MethodHandle[] fields( Class c, CtClass cc, String impl ) throws ReflectiveOperationException, NotFoundException {
+      ArrayList<MethodHandle> mhs = new ArrayList<>();
+      for( CtField ctf : cc.getDeclaredFields() ) {
+        int mods = ctf.getModifiers();
+        if( javassist.Modifier.isTransient(mods) || javassist.Modifier.isStatic(mods) )
+          continue;  // Only serialize not-transient instance fields (not static)
+        Field f = c.getDeclaredField(ctf.getName());
+        API api = f.getAnnotation(API.class);
+        if( api != null && !api.json() ) continue;
+        f.setAccessible(true);
+        Class ft = f.getType();
+        Class base = ft;
+        while( base.isArray() ) base = base.getComponentType();
+        int ftype = ftype(cc, ctf.getSignature());
+        String z = FLDSZ1[ftype % 20];
+        for(int i = 0; i < ftype / 20; ++i ) z = 'A'+z;
+
+        MethodHandle mh;
+        switch( impl ) {
+        case "write":
+          mh = MethodHandles.explicitCastArguments(abMethod("put"+z,ft),MethodType.methodType(void.class,AutoBuffer.class,ft));
+          mh = MethodHandles.filterArguments(mh,1,LOOKUP.unreflectGetter(f));
+          mh = MethodHandles.explicitCastArguments(mh,WRITE_FIELD);
+          break;
+        case "writeJSON":
+          mh = MethodHandles.insertArguments(abMethod("putJSON"+z,String.class,ft),1,f.getName());
+          mh = MethodHandles.explicitCastArguments(mh,MethodType.methodType(void.class,AutoBuffer.class,ft));
+          mh = MethodHandles.filterArguments(mh,1,LOOKUP.unreflectGetter(f));
+          mh = MethodHandles.explicitCastArguments(mh,WRITE_FIELD);
+          break;
+        case "read":
+        case "readJSON":
+          MethodHandle get;
+          if( ftype%20 == 9 || ftype%20 == 11 ) {  // Iced/Objects: ab.get%z(%c.class)
+            get = MethodHandles.insertArguments(abMethod("get"+z,Class.class),1,base);
+          } else if( ftype%20 == 10 ) {            // Enums: ab.get%z(values)
+            Object values = base.getEnumConstants();
+            get = MethodHandles.insertArguments(abMethod("get"+z,values.getClass()),1,values);
+          } else {                                 // Primitives
+            get = abMethod("get"+z);
+          }
+          get = MethodHandles.explicitCastArguments(get,MethodType.methodType(ft,AutoBuffer.class));
+          mh = MethodHandles.filterArguments(LOOKUP.unreflectSetter(f),1,get);
+          mh = MethodHandles.explicitCastArguments(mh,READ_FIELD);
+          break;
+        case "copyOver":
+          mh = MethodHandles.filterArguments(LOOKUP.unreflectSetter(f),1,LOOKUP.unreflectGetter(f));
+          mh = MethodHandles.explicitCastArguments(mh,COPY_FIELD);
+          break;
+        default:
+          throw new IllegalArgumentException(impl);
+        }
+        mhs.add(mh);
+      }
+      return mhs.toArray(new MethodHandle[mhs.size()]);
+    }
+
+    // The AutoBuffer method the generated code would bind to: the exact
+    // overload if there is one, else the most specific applicable one.
+    private static MethodHandle abMethod( String name, Class... args ) throws ReflectiveOperationException {
+      try {
+        return LOOKUP.unreflect(AutoBuffer.class.getMethod(name,args));
+      } catch( NoSuchMethodException ignore ) { }
+      Method best = null;
+      for( Method m : AutoBuffer.class.getMethods() ) {
+        if( !m.getName().equals(name) || m.getParameterTypes().length != args.length ) continue;
+        if( !applicable(m.getParameterTypes(),args) ) continue;
+        if( best == null || applicable(best.getParameterTypes(),m.getParameterTypes()) ) best = m;
+      }
+      if( best == null ) throw new UnsupportedOperationException("AutoBuffer."+name);
+      return LOOKUP.unreflect(best);
+    }
+
+    private static boolean applicable( Class[] params, Class[] args ) {
+      for( int i = 0; i < params.length; i++ )
+        if( !params[i].isAssignableFrom(args[i]) ) return false;
+      return true;
+    }
+  }
+
+}
@@ -22,11 +22,14 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jivesoftware.database.DbConnectionManager;
 import org.jivesoftware.openfire.PacketRouter;
 import org.jivesoftware.openfire.XMPPServer;
+import org.jivesoftware.openfire.XMPPServerListener;
 import org.jivesoftware.openfire.group.GroupJID;
 import org.jivesoftware.openfire.muc.*;
 import org.jivesoftware.util.JiveGlobals;
@@ -75,15 +78,18 @@ public class MUCPersistenceManager {
         "FROM ofMucRoom WHERE serviceID=? AND (emptyDate IS NULL or emptyDate > ?)";
     private static final String LOAD_ALL_AFFILIATIONS =
         "SELECT ofMucAffiliation.roomID,ofMucAffiliation.jid,ofMucAffiliation.affiliation " +
-        "FROM ofMucAffiliation,ofMucRoom WHERE ofMucAffiliation.roomID = ofMucRoom.roomID AND ofMucRoom.serviceID=?";
+        "FROM ofMucAffiliation,ofMucRoom WHERE ofMucAffiliation.roomID = ofMucRoom.roomID AND ofMucRoom.serviceID=? " +
+        "AND (ofMucRoom.emptyDate IS NULL OR ofMucRoom.emptyDate > ?)";
     private static final String LOAD_ALL_MEMBERS =
         "SELECT ofMucMember.roomID,ofMucMember.jid,ofMucMember.nickname FROM ofMucMember,ofMucRoom " +
-        "WHERE ofMucMember.roomID = ofMucRoom.roomID AND ofMucRoom.serviceID=?";
+        "WHERE ofMucMember.roomID = ofMucRoom.roomID AND ofMucRoom.serviceID=? " +
+        "AND (ofMucRoom.emptyDate IS NULL OR ofMucRoom.emptyDate > ?)";
     private static final String LOAD_ALL_HISTORY =
         "SELECT ofMucConversationLog.roomID, ofMucConversationLog.sender, ofMucConversationLog.nickname, " +
         "ofMucConversationLog.logTime, ofMucConversationLog.subject, ofMucConversationLog.body, ofMucConversationLog.stanza FROM " +
         "ofMucConversationLog, ofMucRoom WHERE ofMucConversationLog.roomID = ofMucRoom.roomID AND " +
-        "ofMucRoom.serviceID=? AND ofMucConversationLog.logTime>? AND (ofMucConversationLog.nickname IS NOT NULL " +
+        "ofMucRoom.serviceID=? AND (ofMucRoom.emptyDate IS NULL OR ofMucRoom.emptyDate > ?) AND " +
+        "ofMucConversationLog.logTime>? AND (ofMucConversationLog.nickname IS NOT NULL " +
         "OR ofMucConversationLog.subject IS NOT NULL) ORDER BY ofMucConversationLog.logTime";
     private static final String UPDATE_ROOM =
         "UPDATE ofMucRoom SET modificationDate=?, naturalName=?, description=?, " +
@@ -168,6 +174,11 @@ public class MUCPersistenceManager {
      * @param room the room to load from the database if persistent
      */
     public static void loadFromDB(LocalMUCRoom room) {
+        // The room's ID is only known once it is loaded, so write all the pending changes
+        final WriteBehindQueue queue = writeBehindQueue;
+        if (queue != null) {
+            queue.flush();
+        }
         Connection con = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
@@ -325,37 +336,17 @@ public class MUCPersistenceManager {
      * @param room The room to save its configuration.
      */
     public static void saveToDB(LocalMUCRoom room) {
+        if (room.wasSavedToDB() && isWriteBehindEnabled()) {
+            getWriteBehindQueue().updateRoom(room.getID(), getRoomUpdateParameters(room));
+            return;
+        }
         Connection con = null;
         PreparedStatement pstmt = null;
         try {
             con = DbConnectionManager.getConnection();
             if (room.wasSavedToDB()) {
                 pstmt = con.prepareStatement(UPDATE_ROOM);
-                pstmt.setString(1, StringUtils.dateToMillis(room.getModificationDate()));
-                pstmt.setString(2, room.getNaturalLanguageName());
-                pstmt.setString(3, room.getDescription());
-                pstmt.setInt(4, (room.canOccupantsChangeSubject() ? 1 : 0));
-                pstmt.setInt(5, room.getMaxUsers());
-                pstmt.setInt(6, (room.isPublicRoom() ? 1 : 0));
-                pstmt.setInt(7, (room.isModerated() ? 1 : 0));
-                pstmt.setInt(8, (room.isMembersOnly() ? 1 : 0));
-                pstmt.setInt(9, (room.canOccupantsInvite() ? 1 : 0));
-                pstmt.setString(10, room.getPassword());
-                pstmt.setInt(11, (room.canAnyoneDiscoverJID() ? 1 : 0));
-                pstmt.setInt(12, (room.isLogEnabled() ? 1 : 0));
-                pstmt.setInt(13, marshallRolesToBroadcast(room));
-                pstmt.setInt(14, (room.isLoginRestrictedToNickname() ? 1 : 0));
-                pstmt.setInt(15, (room.canChangeNickname() ? 1 : 0));
-                pstmt.setInt(16, (room.isRegistrationEnabled() ? 1 : 0));
-                switch (room.canSendPrivateMessage())
-                {
-                    default:
-                    case "anyone":       pstmt.setInt(17, 0); break;
-                    case "participants": pstmt.setInt(17, 1); break;
-                    case "moderators":   pstmt.setInt(17, 2); break;
-                    case "none":         pstmt.setInt(17, 3); break;
-                }
-                pstmt.setLong(18, room.getID());
+                bindParameters(pstmt, getRoomUpdateParameters(room));
                 pstmt.executeUpdate();
             }
             else {
@@ -417,6 +408,10 @@ public class MUCPersistenceManager {
         if (!room.isPersistent() || !room.wasSavedToDB()) {
             return;
         }
+        if (isWriteBehindEnabled()) {
+            // Pending updates must not be applied after the room was removed
+            getWriteBehindQueue().discard(room.getID());
+        }
         Connection con = null;
         PreparedStatement pstmt = null;
         boolean abortTransaction = false;
@@ -451,7 +446,12 @@ public class MUCPersistenceManager {
 
     /**
      * Loads all the rooms that had occupants after a given date from the database. This query
-     * will be executed only when the service is starting up.
+     * will be executed only when the service is starting up.<p>
+     *
+     * The rooms are read first. The history is then streamed on a connection of its own while
+     * the affiliations and members are streamed on the caller's thread, and every row is applied
+     * to its room as soon as it is read. Rows of rooms that are not loaded are filtered out by
+     * the queries.
      *
      * @param chatserver the chat server that will hold the loaded rooms.
      * @param emptyDate rooms that hadn't been used before this date won't be loaded.
@@ -459,24 +459,57 @@ public class MUCPersistenceManager {
      * @return a collection with all the persistent rooms.
      */
     public static Collection<LocalMUCRoom> loadRoomsFromDB(MultiUserChatService chatserver, Date emptyDate, PacketRouter packetRouter) {
-        Long serviceID = XMPPServer.getInstance().getMultiUserChatManager().getMultiUserChatServiceID(chatserver.getServiceName());
-
-        final Map<Long, LocalMUCRoom> rooms;
+        final Long serviceID = XMPPServer.getInstance().getMultiUserChatManager().getMultiUserChatServiceID(chatserver.getServiceName());
+
+        final RoomMap rooms;
+        final ExecutorService loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "MUC-history-loader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
         try {
             rooms = loadRooms(serviceID, emptyDate, chatserver, packetRouter);
-            loadHistory(serviceID, rooms);
-            loadAffiliations(serviceID, rooms);
-            loadMembers(serviceID, rooms);
+
+            // The history is streamed on its own connection while the affiliations and members
+            // are streamed on this thread. Every row is applied to its room as soon as it is
+            // read, under the room's lock since rooms are not thread safe.
+            final Future<Void> historyFuture = loader.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws SQLException {
+                    loadHistory(serviceID, emptyDate, rooms);
+                    return null;
+                }
+            });
+            loadAffiliations(serviceID, emptyDate, rooms);
+            loadMembers(serviceID, emptyDate, rooms);
+            historyFuture.get();
+            addLastSubjects(rooms);
         }
-        catch (SQLException sqle) {
-            Log.error("A database error prevented MUC rooms to be loaded from the database.", sqle);
+        catch (SQLException e) {
+            Log.error("A database error prevented MUC rooms to be loaded from the database.", e);
+            return Collections.emptyList();
+        }
+        catch (ExecutionException e) {
+            Log.error("A database error prevented MUC rooms to be loaded from the database.", e.getCause());
+            return Collections.emptyList();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Log.error("Interrupted while loading MUC rooms from the database.", e);
             return Collections.emptyList();
         }
+        finally {
+            loader.shutdownNow();
+        }
 
         // Set now that the room's configuration is updated in the database. Note: We need to
         // set this now since otherwise the room's affiliations will be saved to the database
         // "again" while adding them to the room!
-        for (final MUCRoom room : rooms.values()) {
+        final List<LocalMUCRoom> loadedRooms = rooms.values();
+        for (final MUCRoom room : loadedRooms) {
             room.setSavedToDB(true);
             if (room.getEmptyDate() == null) {
                 // The service process was killed somehow while the room was being used. Since
@@ -486,11 +519,11 @@ public class MUCPersistenceManager {
             }
         }
 
-        return rooms.values();
+        return loadedRooms;
     }
 
-    private static Map<Long, LocalMUCRoom> loadRooms(Long serviceID, Date emptyDate, MultiUserChatService chatserver, PacketRouter packetRouter) throws SQLException {
-        final Map<Long, LocalMUCRoom> rooms = new HashMap<>();
+    private static RoomMap loadRooms(Long serviceID, Date emptyDate, MultiUserChatService chatserver, PacketRouter packetRouter) throws SQLException {
+        final RoomMap rooms = new RoomMap();
 
         Connection connection = null;
         PreparedStatement statement = null;
@@ -498,6 +531,7 @@ public class MUCPersistenceManager {
         try {
             connection = DbConnectionManager.getConnection();
             statement = connection.prepareStatement(LOAD_ALL_ROOMS);
+            statement.setFetchSize(getLoaderFetchSize());
             statement.setLong(1, serviceID);
             statement.setString(2, StringUtils.dateToMillis(emptyDate));
             resultSet = statement.executeQuery();
@@ -506,13 +540,14 @@ public class MUCPersistenceManager {
                 try {
                     LocalMUCRoom room = new LocalMUCRoom(chatserver, resultSet.getString(4), packetRouter);
                     room.setID(resultSet.getLong(1));
-                    room.setCreationDate(new Date(Long.parseLong(resultSet.getString(2).trim()))); // creation date
-                    room.setModificationDate(new Date(Long.parseLong(resultSet.getString(3).trim()))); // modification date
+                    room.setCreationDate(new Date(parseMillis(resultSet.getString(2)))); // creation date
+                    room.setModificationDate(new Date(parseMillis(resultSet.getString(3)))); // modification date
                     room.setNaturalLanguageName(resultSet.getString(5));
                     room.setDescription(resultSet.getString(6));
-                    room.setLockedDate(new Date(Long.parseLong(resultSet.getString(7).trim())));
-                    if (resultSet.getString(8) != null) {
-                        room.setEmptyDate(new Date(Long.parseLong(resultSet.getString(8).trim())));
+                    room.setLockedDate(new Date(parseMillis(resultSet.getString(7))));
+                    final String emptyMillis = resultSet.getString(8);
+                    if (emptyMillis != null) {
+                        room.setEmptyDate(new Date(parseMillis(emptyMillis)));
                     }
                     else {
                         room.setEmptyDate(null);
@@ -527,18 +562,7 @@ public class MUCPersistenceManager {
                     room.setCanAnyoneDiscoverJID(resultSet.getInt(16) == 1);
                     room.setLogEnabled(resultSet.getInt(17) == 1);
                     room.setSubject(resultSet.getString(18));
-                    List<String> rolesToBroadcast = new ArrayList<>();
-                    String roles = StringUtils.zeroPadString(Integer.toBinaryString(resultSet.getInt(19)), 3);
-                    if (roles.charAt(0) == '1') {
-                        rolesToBroadcast.add("moderator");
-                    }
-                    if (roles.charAt(1) == '1') {
-                        rolesToBroadcast.add("participant");
-                    }
-                    if (roles.charAt(2) == '1') {
-                        rolesToBroadcast.add("visitor");
-                    }
-                    room.setRolesToBroadcastPresence(rolesToBroadcast);
+                    room.setRolesToBroadcastPresence(unmarshallRolesToBroadcast(resultSet.getInt(19)));
                     room.setLoginRestrictedToNickname(resultSet.getInt(20) == 1);
                     room.setChangeNickname(resultSet.getInt(21) == 1);
                     room.setRegistrationEnabled(resultSet.getInt(22) == 1);
@@ -563,13 +587,14 @@ public class MUCPersistenceManager {
         return rooms;
     }
 
-    private static void loadHistory(Long serviceID, Map<Long, LocalMUCRoom> rooms) throws SQLException {
+    private static void loadHistory(Long serviceID, Date emptyDate, RoomMap rooms) throws SQLException {
         Connection connection = null;
         PreparedStatement statement = null;
         ResultSet resultSet = null;
         try {
             connection = DbConnectionManager.getConnection();
             statement = connection.prepareStatement(LOAD_ALL_HISTORY);
+            statement.setFetchSize(getLoaderFetchSize());
 
             // Reload the history, using "muc.history.reload.limit" (days) if present
             long from = 0;
@@ -581,7 +606,8 @@ public class MUCPersistenceManager {
                 from = System.currentTimeMillis() - (BigInteger.valueOf(86400000).multiply(BigInteger.valueOf(reloadLimitDays))).longValue();
             }
             statement.setLong(1, serviceID);
-            statement.setString(2, StringUtils.dateToMillis(new Date(from)));
+            statement.setString(2, StringUtils.dateToMillis(emptyDate));
+            statement.setString(3, StringUtils.dateToMillis(new Date(from)));
             resultSet = statement.executeQuery();
 
             while (resultSet.next()) {
@@ -591,13 +617,15 @@ public class MUCPersistenceManager {
                     if (room == null || !room.isLogEnabled()) {
                         continue;
                     }
-                    String senderJID = resultSet.getString(2);
-                    String nickname  = resultSet.getString(3);
-                    Date sentDate    = new Date(Long.parseLong(resultSet.getString(4).trim()));
-                    String subject   = resultSet.getString(5);
-                    String body      = resultSet.getString(6);
-                    String stanza = resultSet.getString(7);
-                    room.getRoomHistory().addOldMessage(senderJID, nickname, sentDate, subject, body, stanza);
+                    final String senderJID = resultSet.getString(2);
+                    final String nickname = resultSet.getString(3);
+                    final Date sentDate = new Date(parseMillis(resultSet.getString(4)));
+                    final String subject = resultSet.getString(5);
+                    final String body = resultSet.getString(6);
+                    final String stanza = resultSet.getString(7);
+                    synchronized (room) {
+                        room.getRoomHistory().addOldMessage(senderJID, nickname, sentDate, subject, body, stanza);
+                    }
                 } catch (SQLException e) {
                     Log.warn("A database exception prevented the history for one particular MUC room to be loaded from the database.", e);
                 }
@@ -605,7 +633,9 @@ public class MUCPersistenceManager {
         } finally {
             DbConnectionManager.closeConnection(resultSet, statement, connection);
         }
+    }
 
+    private static void addLastSubjects(RoomMap rooms) {
         // Add the last known room subject to the room history only for those rooms that still
         // don't have in their histories the last room subject
         for (MUCRoom loadedRoom : rooms.values())
@@ -624,56 +654,29 @@ public class MUCPersistenceManager {
         }
     }
 
-    private static void loadAffiliations(Long serviceID, Map<Long, LocalMUCRoom> rooms) throws SQLException {
+    private static void loadAffiliations(Long serviceID, Date emptyDate, RoomMap rooms) throws SQLException {
         Connection connection = null;
         PreparedStatement statement = null;
         ResultSet resultSet = null;
         try {
             connection = DbConnectionManager.getConnection();
             statement = connection.prepareStatement(LOAD_ALL_AFFILIATIONS);
+            statement.setFetchSize(getLoaderFetchSize());
             statement.setLong(1, serviceID);
+            statement.setString(2, StringUtils.dateToMillis(emptyDate));
             resultSet = statement.executeQuery();
 
             while (resultSet.next()) {
                 try {
-                    long roomID = resultSet.getLong(1);
-                    LocalMUCRoom room = rooms.get(roomID);
+                    LocalMUCRoom room = rooms.get(resultSet.getLong(1));
                     // Skip to the next position if the room does not exist
                     if (room == null) {
                         continue;
                     }
-
-                    final MUCRole.Affiliation affiliation = MUCRole.Affiliation.valueOf(resultSet.getInt(3));
-
                     final String jidValue = resultSet.getString(2);
-                    final JID affiliationJID;
-                    try {
-                        // might be a group JID
-                        affiliationJID = GroupJID.fromString(jidValue);
-                    } catch (IllegalArgumentException ex) {
-                        Log.warn("An illegal JID ({}) was found in the database, "
-                                + "while trying to load all affiliations for room "
-                                + "{}. The JID is ignored."
-                                , new Object[] { jidValue, roomID });
-                        continue;
-                    }
-
-                    try {
-                        switch (affiliation) {
-                            case owner:
-                                room.addOwner(affiliationJID, room.getRole());
-                                break;
-                            case admin:
-                                room.addAdmin(affiliationJID, room.getRole());
-                                break;
-                            case outcast:
-                                room.addOutcast(affiliationJID, null, room.getRole());
-                                break;
-                            default:
-                                Log.error("Unknown affiliation value " + affiliation + " for user " + affiliationJID + " in persistent room " + room.getID());
-                        }
-                    } catch (ForbiddenException | ConflictException | NotAllowedException e) {
-                        Log.warn("An exception prevented affiliations to be added to the room with id " + roomID, e);
+                    final int affiliationValue = resultSet.getInt(3);
+                    synchronized (room) {
+                        applyAffiliation(room, jidValue, affiliationValue);
                     }
                 } catch (SQLException e) {
                     Log.error("A database exception prevented affiliations for one particular MUC room to be loaded from the database.", e);
@@ -685,15 +688,50 @@ public class MUCPersistenceManager {
         }
     }
 
-    private static void loadMembers(Long serviceID, Map<Long, LocalMUCRoom> rooms) throws SQLException {
+    private static void applyAffiliation(LocalMUCRoom room, String jidValue, int affiliationValue) {
+        final MUCRole.Affiliation affiliation = MUCRole.Affiliation.valueOf(affiliationValue);
+
+        final JID affiliationJID;
+        try {
+            // might be a group JID
+            affiliationJID = GroupJID.fromString(jidValue);
+        } catch (IllegalArgumentException ex) {
+            Log.warn("An illegal JID ({}) was found in the database, "
+                    + "while trying to load all affiliations for room "
+                    + "{}. The JID is ignored."
+                    , new Object[] { jidValue, room.getID() });
+            return;
+        }
+
+        try {
+            switch (affiliation) {
+                case owner:
+                    room.addOwner(affiliationJID, room.getRole());
+                    break;
+                case admin:
+                    room.addAdmin(affiliationJID, room.getRole());
+                    break;
+                case outcast:
+                    room.addOutcast(affiliationJID, null, room.getRole());
+                    break;
+                default:
+                    Log.error("Unknown affiliation value " + affiliation + " for user " + affiliationJID + " in persistent room " + room.getID());
+            }
+        } catch (ForbiddenException | ConflictException | NotAllowedException e) {
+            Log.warn("An exception prevented affiliations to be added to the room with id " + room.getID(), e);
+        }
+    }
+
+    private static void loadMembers(Long serviceID, Date emptyDate, RoomMap rooms) throws SQLException {
         Connection connection = null;
         PreparedStatement statement = null;
         ResultSet resultSet = null;
-        JID affiliationJID = null;
         try {
             connection = DbConnectionManager.getConnection();
             statement = connection.prepareStatement(LOAD_ALL_MEMBERS);
+            statement.setFetchSize(getLoaderFetchSize());
             statement.setLong(1, serviceID);
+            statement.setString(2, StringUtils.dateToMillis(emptyDate));
             resultSet = statement.executeQuery();
 
             while (resultSet.next()) {
@@ -703,10 +741,14 @@ public class MUCPersistenceManager {
                     if (room == null) {
                         continue;
                     }
+                    final String jidValue = resultSet.getString(2);
+                    final String nickname = resultSet.getString(3);
                     try {
                         // might be a group JID
-                        affiliationJID = GroupJID.fromString(resultSet.getString(2));
-                        room.addMember(affiliationJID, resultSet.getString(3), room.getRole());
+                        JID affiliationJID = GroupJID.fromString(jidValue);
+                        synchronized (room) {
+                            room.addMember(affiliationJID, nickname, room.getRole());
+                        }
                     } catch (ForbiddenException | ConflictException e) {
                         Log.warn("Unable to add member to room.", e);
                     }
@@ -719,6 +761,83 @@ public class MUCPersistenceManager {
         }
     }
 
+    /**
+     * Returns the JDBC fetch size used by the bulk room loader, so that large services are
+     * streamed from the database instead of being buffered by the driver all at once.
+     *
+     * @return the fetch size hint for the bulk loader statements.
+     */
+    private static int getLoaderFetchSize() {
+        return JiveGlobals.getIntProperty(MUC_LOADER_FETCH_SIZE, 500);
+    }
+
+    /**
+     * Parses a date stored as a (possibly space padded) string of milliseconds without
+     * creating intermediate strings. This is the counterpart of {@link StringUtils#dateToMillis(Date)}.
+     *
+     * @param value the stored date value.
+     * @return the number of milliseconds represented by the value.
+     * @throws NumberFormatException if the value is not a valid number of milliseconds.
+     */
+    private static long parseMillis(String value) {
+        if (value == null) {
+            throw new NumberFormatException("null");
+        }
+        int start = 0;
+        int end = value.length();
+        while (start < end && value.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            throw new NumberFormatException("For input string: \"" + value + "\"");
+        }
+        boolean negative = false;
+        if (value.charAt(start) == '-' || value.charAt(start) == '+') {
+            negative = value.charAt(start) == '-';
+            start++;
+            if (start == end) {
+                throw new NumberFormatException("For input string: \"" + value + "\"");
+            }
+        }
+        if (end - start > 18) {
+            // Too long to be accumulated safely, let the JDK deal with overflow checks.
+            return Long.parseLong(value.trim());
+        }
+        long result = 0;
+        for (int i = start; i < end; i++) {
+            final int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("For input string: \"" + value + "\"");
+            }
+            result = result * 10 + digit;
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Returns the roles to broadcast represented by the bitmask created by
+     * {@link #marshallRolesToBroadcast(MUCRoom)}.
+     *
+     * @param roles the bitmask of the roles to broadcast (moderator, participant, visitor).
+     * @return the names of the roles to broadcast.
+     */
+    private static List<String> unmarshallRolesToBroadcast(int roles) {
+        List<String> rolesToBroadcast = new ArrayList<>(3);
+        if ((roles & 4) != 0) {
+            rolesToBroadcast.add("moderator");
+        }
+        if ((roles & 2) != 0) {
+            rolesToBroadcast.add("participant");
+        }
+        if ((roles & 1) != 0) {
+            rolesToBroadcast.add("visitor");
+        }
+        return rolesToBroadcast;
+    }
+
     /**
      * Updates the room's subject in the database. 
      * 
@@ -728,6 +847,10 @@ public class MUCPersistenceManager {
         if (!room.isPersistent() || !room.wasSavedToDB()) {
             return;
         }
+        if (isWriteBehindEnabled()) {
+            getWriteBehindQueue().updateSubject(room.getID(), room.getSubject());
+            return;
+        }
 
         Connection con = null;
         PreparedStatement pstmt = null;
@@ -755,6 +878,10 @@ public class MUCPersistenceManager {
         if (!room.isPersistent() || !room.wasSavedToDB()) {
             return;
         }
+        if (isWriteBehindEnabled()) {
+            getWriteBehindQueue().updateLock(room.getID(), StringUtils.dateToMillis(room.getLockedDate()));
+            return;
+        }
 
         Connection con = null;
         PreparedStatement pstmt = null;
@@ -782,6 +909,11 @@ public class MUCPersistenceManager {
         if (!room.isPersistent() || !room.wasSavedToDB()) {
             return;
         }
+        if (isWriteBehindEnabled()) {
+            Date emptyDate = room.getEmptyDate();
+            getWriteBehindQueue().updateEmptyDate(room.getID(), emptyDate == null ? null : StringUtils.dateToMillis(emptyDate));
+            return;
+        }
 
         Connection con = null;
         PreparedStatement pstmt = null;
@@ -823,44 +955,15 @@ public class MUCPersistenceManager {
         if (!room.isPersistent() || !room.wasSavedToDB()) {
             return;
         }
+        final List<PendingStatement> statements = new ArrayList<>(2);
         if (MUCRole.Affiliation.none == oldAffiliation) {
             if (MUCRole.Affiliation.member == newAffiliation) {
                 // Add the user to the members table
-                Connection con = null;
-                PreparedStatement pstmt = null;
-                try {
-                    con = DbConnectionManager.getConnection();
-                    pstmt = con.prepareStatement(ADD_MEMBER);
-                    pstmt.setLong(1, room.getID());
-                    pstmt.setString(2, affiliationJid);
-                    pstmt.setString(3, nickname);
-                    pstmt.executeUpdate();
-                }
-                catch (SQLException sqle) {
-                    Log.error(sqle.getMessage(), sqle);
-                }
-                finally {
-                    DbConnectionManager.closeConnection(pstmt, con);
-                }
+                statements.add(new PendingStatement(ADD_MEMBER, room.getID(), affiliationJid, nickname));
             }
             else {
                 // Add the user to the generic affiliations table
-                Connection con = null;
-                PreparedStatement pstmt = null;
-                try {
-                    con = DbConnectionManager.getConnection();
-                    pstmt = con.prepareStatement(ADD_AFFILIATION);
-                    pstmt.setLong(1, room.getID());
-                    pstmt.setString(2, affiliationJid);
-                    pstmt.setInt(3, newAffiliation.getValue());
-                    pstmt.executeUpdate();
-                }
-                catch (SQLException sqle) {
-                    Log.error(sqle.getMessage(), sqle);
-                }
-                finally {
-                    DbConnectionManager.closeConnection(pstmt, con);
-                }
+                statements.add(new PendingStatement(ADD_AFFILIATION, room.getID(), affiliationJid, newAffiliation.getValue()));
             }
         }
         else {
@@ -868,99 +971,40 @@ public class MUCPersistenceManager {
                     MUCRole.Affiliation.member == oldAffiliation)
             {
                 // Update the member's data in the member table.
-                Connection con = null;
-                PreparedStatement pstmt = null;
-                try {
-                    con = DbConnectionManager.getConnection();
-                    pstmt = con.prepareStatement(UPDATE_MEMBER);
-                    pstmt.setString(1, nickname);
-                    pstmt.setLong(2, room.getID());
-                    pstmt.setString(3, affiliationJid);
-                    pstmt.executeUpdate();
-                }
-                catch (SQLException sqle) {
-                    Log.error(sqle.getMessage(), sqle);
-                }
-                finally {
-                    DbConnectionManager.closeConnection(pstmt, con);
-                }
+                statements.add(new PendingStatement(UPDATE_MEMBER, nickname, room.getID(), affiliationJid));
             }
             else if (MUCRole.Affiliation.member == newAffiliation) {
-                Connection con = null;
-                PreparedStatement pstmt = null;
-                boolean abortTransaction = false;
-                try {
-                    // Remove the user from the generic affiliations table
-                    con = DbConnectionManager.getTransactionConnection();
-                    pstmt = con.prepareStatement(DELETE_AFFILIATION);
-                    pstmt.setLong(1, room.getID());
-                    pstmt.setString(2, affiliationJid);
-                    pstmt.executeUpdate();
-                    DbConnectionManager.fastcloseStmt(pstmt);
-
-                    // Add them as a member.
-                    pstmt = con.prepareStatement(ADD_MEMBER);
-                    pstmt.setLong(1, room.getID());
-                    pstmt.setString(2, affiliationJid);
-                    pstmt.setString(3, nickname);
-                    pstmt.executeUpdate();
-                }
-                catch (SQLException sqle) {
-                    Log.error(sqle.getMessage(), sqle);
-                    abortTransaction = true;
-                }
-                finally {
-                    DbConnectionManager.closeStatement(pstmt);
-                    DbConnectionManager.closeTransactionConnection(con, abortTransaction);
-                }
+                // Remove the user from the generic affiliations table and add them as a member.
+                statements.add(new PendingStatement(DELETE_AFFILIATION, room.getID(), affiliationJid));
+                statements.add(new PendingStatement(ADD_MEMBER, room.getID(), affiliationJid, nickname));
             }
             else if (MUCRole.Affiliation.member == oldAffiliation) {
-                Connection con = null;
-                PreparedStatement pstmt = null;
-                boolean abortTransaction = false;
-                try {
-                    con = DbConnectionManager.getTransactionConnection();
-                    pstmt = con.prepareStatement(DELETE_MEMBER);
-                    pstmt.setLong(1, room.getID());
-                    pstmt.setString(2, affiliationJid);
-                    pstmt.executeUpdate();
-                    DbConnectionManager.fastcloseStmt(pstmt);
-
-                    pstmt = con.prepareStatement(ADD_AFFILIATION);
-                    pstmt.setLong(1, room.getID());
-                    pstmt.setString(2, affiliationJid);
-                    pstmt.setInt(3, newAffiliation.getValue());
-                    pstmt.executeUpdate();
-                }
-                catch (SQLException sqle) {
-                    Log.error(sqle.getMessage(), sqle);
-                    abortTransaction = true;
-                }
-                finally {
-                    DbConnectionManager.closeStatement(pstmt);
-                    DbConnectionManager.closeTransactionConnection(con, abortTransaction);
-                }
+                statements.add(new PendingStatement(DELETE_MEMBER, room.getID(), affiliationJid));
+                statements.add(new PendingStatement(ADD_AFFILIATION, room.getID(), affiliationJid, newAffiliation.getValue()));
             }
             else {
                 // Update the user in the generic affiliations table.
-                Connection con = null;
-                PreparedStatement pstmt = null;
-                try {
-                    con = DbConnectionManager.getConnection();
-                    pstmt = con.prepareStatement(UPDATE_AFFILIATION);
-                    pstmt.setInt(1, newAffiliation.getValue());
-                    pstmt.setLong(2, room.getID());
-                    pstmt.setString(3, affiliationJid);
-                    pstmt.executeUpdate();
-                }
-                catch (SQLException sqle) {
-                    Log.error(sqle.getMessage(), sqle);
-                }
-                finally {
-                    DbConnectionManager.closeConnection(pstmt, con);
-                }
+                statements.add(new PendingStatement(UPDATE_AFFILIATION, newAffiliation.getValue(), room.getID(), affiliationJid));
             }
         }
+
+        if (isWriteBehindEnabled()) {
+            getWriteBehindQueue().addStatements(room.getID(), statements);
+            return;
+        }
+        Connection con = null;
+        boolean abortTransaction = false;
+        try {
+            con = DbConnectionManager.getTransactionConnection();
+            executeStatements(con, statements);
+        }
+        catch (SQLException sqle) {
+            Log.error(sqle.getMessage(), sqle);
+            abortTransaction = true;
+        }
+        finally {
+            DbConnectionManager.closeTransactionConnection(con, abortTransaction);
+        }
     }
 
     /**
@@ -975,6 +1019,13 @@ public class MUCPersistenceManager {
     {
         final String affiliationJID = jid.toBareJID();
         if (room.isPersistent() && room.wasSavedToDB()) {
+            if (isWriteBehindEnabled()) {
+                // Keep the removal after the affiliation changes that are still queued
+                final String sql = MUCRole.Affiliation.member == oldAffiliation ? DELETE_MEMBER : DELETE_AFFILIATION;
+                getWriteBehindQueue().addStatements(room.getID(),
+                        Collections.singletonList(new PendingStatement(sql, room.getID(), affiliationJID)));
+                return;
+            }
             if (MUCRole.Affiliation.member == oldAffiliation) {
                 // Remove the user from the members table
                 Connection con = null;
@@ -1021,6 +1072,11 @@ public class MUCPersistenceManager {
      */
     public static void removeAffiliationFromDB(JID affiliationJID)
     {
+        // The user may have affiliation changes queued in any room, write them first
+        final WriteBehindQueue queue = writeBehindQueue;
+        if (queue != null) {
+            queue.flush();
+        }
         Connection con = null;
         PreparedStatement pstmt = null;
         try {
@@ -1045,24 +1101,33 @@ public class MUCPersistenceManager {
     }
 
     /**
-     * Saves the conversation log entry to the database.
+     * Saves the conversation log entry to the database. When write-behind persistence is
+     * enabled the entry is queued, and the queue writes it (retrying failures) before the
+     * server shuts down.
      * 
      * @param entry the ConversationLogEntry to save to the database.
      * @return true if the ConversationLogEntry was saved successfully to the database.
      */
     public static boolean saveConversationLogEntry(ConversationLogEntry entry) {
+        final Object[] parameters = new Object[] {
+            entry.getRoomID(),
+            entry.getSender().toString(),
+            entry.getNickname(),
+            StringUtils.dateToMillis(entry.getDate()),
+            entry.getSubject(),
+            entry.getBody(),
+            entry.getStanza()
+        };
+        if (isWriteBehindEnabled()) {
+            getWriteBehindQueue().addLogEntry(entry.getRoomID(), parameters);
+            return true;
+        }
         Connection con = null;
         PreparedStatement pstmt = null;
         try {
             con = DbConnectionManager.getConnection();
             pstmt = con.prepareStatement(ADD_CONVERSATION_LOG);
-            pstmt.setLong(1, entry.getRoomID());
-            pstmt.setString(2, entry.getSender().toString());
-            pstmt.setString(3, entry.getNickname());
-            pstmt.setString(4, StringUtils.dateToMillis(entry.getDate()));
-            pstmt.setString(5, entry.getSubject());
-            pstmt.setString(6, entry.getBody());
-            pstmt.setString(7, entry.getStanza());
+            bindParameters(pstmt, parameters);
             pstmt.executeUpdate();
             return true;
         }
@@ -1089,6 +1154,172 @@ public class MUCPersistenceManager {
         return Integer.parseInt(buffer.toString(), 2);
     }
 
+    /**
+     * Returns the parameters of the {@link #UPDATE_ROOM} statement for the given room.
+     *
+     * @param room the room to save its configuration.
+     * @return the parameters to bind, in statement order.
+     */
+    private static Object[] getRoomUpdateParameters(LocalMUCRoom room) {
+        final int canSendPrivateMessage;
+        switch (room.canSendPrivateMessage())
+        {
+            default:
+            case "anyone":       canSendPrivateMessage = 0; break;
+            case "participants": canSendPrivateMessage = 1; break;
+            case "moderators":   canSendPrivateMessage = 2; break;
+            case "none":         canSendPrivateMessage = 3; break;
+        }
+        return new Object[] {
+            StringUtils.dateToMillis(room.getModificationDate()),
+            room.getNaturalLanguageName(),
+            room.getDescription(),
+            (room.canOccupantsChangeSubject() ? 1 : 0),
+            room.getMaxUsers(),
+            (room.isPublicRoom() ? 1 : 0),
+            (room.isModerated() ? 1 : 0),
+            (room.isMembersOnly() ? 1 : 0),
+            (room.canOccupantsInvite() ? 1 : 0),
+            room.getPassword(),
+            (room.canAnyoneDiscoverJID() ? 1 : 0),
+            (room.isLogEnabled() ? 1 : 0),
+            marshallRolesToBroadcast(room),
+            (room.isLoginRestrictedToNickname() ? 1 : 0),
+            (room.canChangeNickname() ? 1 : 0),
+            (room.isRegistrationEnabled() ? 1 : 0),
+            canSendPrivateMessage,
+            room.getID()
+        };
+    }
+
+    /**
+     * Binds the parameters to the statement. Integers and longs are bound with their
+     * primitive setters, any other value (including null) is bound as a string.
+     *
+     * @param pstmt the statement to bind the parameters to.
+     * @param parameters the parameters to bind, in statement order.
+     * @throws SQLException if a parameter could not be bound.
+     */
+    private static void bindParameters(PreparedStatement pstmt, Object[] parameters) throws SQLException {
+        for (int i = 0; i < parameters.length; i++) {
+            final Object parameter = parameters[i];
+            if (parameter instanceof Long) {
+                pstmt.setLong(i + 1, (Long) parameter);
+            }
+            else if (parameter instanceof Integer) {
+                pstmt.setInt(i + 1, (Integer) parameter);
+            }
+            else {
+                pstmt.setString(i + 1, (String) parameter);
+            }
+        }
+    }
+
+    /**
+     * Executes the statements in order using the given connection. Consecutive statements
+     * that share the same SQL are sent to the database as a single JDBC batch.
+     *
+     * @param con the connection to use.
+     * @param statements the statements to execute.
+     * @throws SQLException if a statement could not be executed.
+     */
+    private static void executeStatements(Connection con, List<PendingStatement> statements) throws SQLException {
+        PreparedStatement pstmt = null;
+        String sql = null;
+        try {
+            for (final PendingStatement statement : statements) {
+                if (!statement.sql.equals(sql)) {
+                    if (pstmt != null) {
+                        pstmt.executeBatch();
+                        DbConnectionManager.fastcloseStmt(pstmt);
+                    }
+                    sql = statement.sql;
+                    pstmt = con.prepareStatement(sql);
+                }
+                bindParameters(pstmt, statement.parameters);
+                pstmt.addBatch();
+            }
+            if (pstmt != null) {
+                pstmt.executeBatch();
+            }
+        }
+        finally {
+            DbConnectionManager.closeStatement(pstmt);
+        }
+    }
+
+    /**
+     * Returns true if room state changes, affiliation changes and conversation log entries
+     * are persisted by a background write-behind queue instead of on the caller's thread.
+     * When write-behind persistence was switched off the queued changes are written first,
+     * so that they can't overwrite the synchronous writes that follow.
+     *
+     * @return true if write-behind persistence is enabled.
+     */
+    private static boolean isWriteBehindEnabled() {
+        if (!writeBehindStopped && JiveGlobals.getBooleanProperty(MUC_WRITE_BEHIND_ENABLED, false)) {
+            return true;
+        }
+        if (writeBehindQueue != null) {
+            stopWriteBehindQueue();
+        }
+        return false;
+    }
+
+    private static WriteBehindQueue getWriteBehindQueue() {
+        WriteBehindQueue queue = writeBehindQueue;
+        if (queue == null) {
+            synchronized (MUCPersistenceManager.class) {
+                queue = writeBehindQueue;
+                if (queue == null) {
+                    queue = new WriteBehindQueue(
+                            JiveGlobals.getIntProperty(MUC_WRITE_BEHIND_BATCH_SIZE, 500),
+                            JiveGlobals.getLongProperty(MUC_WRITE_BEHIND_INTERVAL, 1000),
+                            JiveGlobals.getIntProperty(MUC_WRITE_BEHIND_CAPACITY, 10000),
+                            JiveGlobals.getIntProperty(MUC_WRITE_BEHIND_ROOM_CAPACITY, 1000));
+                    writeBehindQueue = queue;
+                    if (!serverListenerRegistered) {
+                        XMPPServer.getInstance().addServerListener(new XMPPServerListener() {
+                            @Override
+                            public void serverStarted() {
+                            }
+
+                            @Override
+                            public void serverStopping() {
+                                shutdownWriteBehind();
+                            }
+                        });
+                        serverListenerRegistered = true;
+                    }
+                }
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * Writes all the pending room updates, affiliation changes and conversation log entries
+     * to the database and stops the write-behind queue. Later changes are written on the
+     * caller's thread. This method is called when the server is stopping, so that no queued
+     * change is lost. Calling this method when write-behind persistence is disabled has no
+     * effect.
+     */
+    public static void shutdownWriteBehind() {
+        writeBehindStopped = true;
+        stopWriteBehindQueue();
+    }
+
+    private static void stopWriteBehindQueue() {
+        final WriteBehindQueue queue;
+        synchronized (MUCPersistenceManager.class) {
+            queue = writeBehindQueue;
+            writeBehindQueue = null;
+        }
+        if (queue != null) {
+            queue.shutdown();
+        }
+    }
+
     /**
      * Returns a Jive property.
      *
@@ -1345,5 +1576,470 @@ public class MUCPersistenceManager {
     public static void refreshProperties(String subdomain) {
         propertyMaps.replace(subdomain, new MUCServiceProperties(subdomain));
     }
-    
+
+    // property name for the JDBC fetch size used while bulk loading the persistent rooms
+    private static final String MUC_LOADER_FETCH_SIZE = "xmpp.muc.loader.fetchsize";
+
+    // property names for the write-behind persistence of room state, affiliations and conversation logs
+    private static final String MUC_WRITE_BEHIND_ENABLED = "xmpp.muc.writebehind.enabled";
+    private static final String MUC_WRITE_BEHIND_BATCH_SIZE = "xmpp.muc.writebehind.batchsize";
+    private static final String MUC_WRITE_BEHIND_INTERVAL = "xmpp.muc.writebehind.interval";
+    private static final String MUC_WRITE_BEHIND_CAPACITY = "xmpp.muc.writebehind.capacity";
+    private static final String MUC_WRITE_BEHIND_ROOM_CAPACITY = "xmpp.muc.writebehind.roomcapacity";
+
+    /* The write-behind queue, created the first time that it is needed */
+    private static volatile WriteBehindQueue writeBehindQueue;
+    /* Set once the server is stopping, after which changes are no longer queued */
+    private static volatile boolean writeBehindStopped;
+    /* Guarded by MUCPersistenceManager.class */
+    private static boolean serverListenerRegistered;
+
+    /**
+     * A statement and its parameters, captured on the caller's thread so that it can be
+     * executed later on.
+     */
+    private static final class PendingStatement {
+        private final String sql;
+        private final Object[] parameters;
+
+        private PendingStatement(String sql, Object... parameters) {
+            this.sql = sql;
+            this.parameters = parameters;
+        }
+    }
+
+    /**
+     * The changes of a single room that are waiting to be written to the database. Updates of
+     * the room configuration, subject, lock date and empty date are coalesced (the last write
+     * wins) while affiliation changes and conversation log entries keep their order.
+     */
+    private static final class PendingRoomUpdates {
+        private PendingStatement configuration;
+        private PendingStatement subject;
+        private PendingStatement lock;
+        private PendingStatement emptyDate;
+        private final List<PendingStatement> affiliations = new ArrayList<>();
+        private final List<PendingStatement> logEntries = new ArrayList<>();
+        /* Set once the updates were taken by a flush, so that late writers use a fresh instance */
+        private boolean drained;
+        /* Number of flushes that failed to write these updates */
+        private int failedAttempts;
+
+        private int size() {
+            return count(configuration) + count(subject) + count(lock) + count(emptyDate)
+                    + affiliations.size() + logEntries.size();
+        }
+
+        private static int count(PendingStatement statement) {
+            return statement == null ? 0 : 1;
+        }
+
+        /**
+         * Returns the statements to execute, the coalesced room updates first.
+         */
+        private List<PendingStatement> getStatements() {
+            final List<PendingStatement> statements = new ArrayList<>(size());
+            addIfPresent(statements, configuration);
+            addIfPresent(statements, subject);
+            addIfPresent(statements, lock);
+            addIfPresent(statements, emptyDate);
+            statements.addAll(affiliations);
+            statements.addAll(logEntries);
+            return statements;
+        }
+
+        private static void addIfPresent(List<PendingStatement> statements, PendingStatement statement) {
+            if (statement != null) {
+                statements.add(statement);
+            }
+        }
+    }
+
+    /**
+     * Persists room changes and conversation log entries in the background. Changes are kept in
+     * a bounded set of pending updates per room ID and written in JDBC batches, within a single
+     * transaction, when the number of queued statements reaches the batch size or when the flush
+     * interval elapses.<p>
+     *
+     * When that transaction fails each room is written again in a transaction of its own, and
+     * the changes of the rooms that still fail are put back in the queue for the next flush.
+     * After {@link #MAX_FAILED_ATTEMPTS} failed flushes the changes of a room are written one
+     * statement at a time, and only the statements that fail on their own are dropped (and
+     * logged).<p>
+     *
+     * When the queue (or a single room) holds too many changes the caller's thread writes
+     * them itself, which slows down producers to the pace of the database. Once the queue was
+     * shut down, changes that are still added to it are written on the caller's thread too.
+     */
+    private static final class WriteBehindQueue {
+
+        private static final int MAX_FAILED_ATTEMPTS = 10;
+
+        private final ConcurrentHashMap<Long, PendingRoomUpdates> pending = new ConcurrentHashMap<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean flushRequested = new AtomicBoolean();
+        private final Object flushLock = new Object();
+        private final ScheduledExecutorService executor;
+        private final int batchSize;
+        private final int capacity;
+        private final int roomCapacity;
+        private volatile boolean shutdown;
+
+        private final Runnable flushTask = new Runnable() {
+            @Override
+            public void run() {
+                flushRequested.set(false);
+                try {
+                    flush();
+                }
+                catch (Exception e) {
+                    Log.error("An error occurred while writing pending MUC updates to the database.", e);
+                }
+            }
+        };
+
+        private WriteBehindQueue(int batchSize, long interval, int capacity, int roomCapacity) {
+            this.batchSize = batchSize;
+            this.capacity = capacity;
+            this.roomCapacity = roomCapacity;
+            this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "MUC-write-behind");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.scheduleWithFixedDelay(flushTask, interval, interval, TimeUnit.MILLISECONDS);
+        }
+
+        private void updateRoom(long roomID, Object[] parameters) {
+            coalesce(roomID, new PendingStatement(UPDATE_ROOM, parameters));
+        }
+
+        private void updateSubject(long roomID, String subject) {
+            coalesce(roomID, new PendingStatement(UPDATE_SUBJECT, subject, roomID));
+        }
+
+        private void updateLock(long roomID, String lockedDate) {
+            coalesce(roomID, new PendingStatement(UPDATE_LOCK, lockedDate, roomID));
+        }
+
+        private void updateEmptyDate(long roomID, String emptyDate) {
+            coalesce(roomID, new PendingStatement(UPDATE_EMPTYDATE, emptyDate, roomID));
+        }
+
+        /**
+         * Replaces the pending update of the same kind (UPDATE_ROOM, UPDATE_SUBJECT, UPDATE_LOCK
+         * or UPDATE_EMPTYDATE) of a room with the given statement.
+         */
+        private void coalesce(long roomID, PendingStatement statement) {
+            final int added;
+            final int roomSize;
+            while (true) {
+                final PendingRoomUpdates updates = getPendingRoomUpdates(roomID);
+                synchronized (updates) {
+                    if (!updates.drained) {
+                        final int before = updates.size();
+                        switch (statement.sql) {
+                            case UPDATE_ROOM:      updates.configuration = statement; break;
+                            case UPDATE_SUBJECT:   updates.subject = statement; break;
+                            case UPDATE_LOCK:      updates.lock = statement; break;
+                            case UPDATE_EMPTYDATE: updates.emptyDate = statement; break;
+                            default: throw new IllegalArgumentException(statement.sql);
+                        }
+                        roomSize = updates.size();
+                        added = roomSize - before;
+                        break;
+                    }
+                }
+            }
+            added(added, roomSize);
+        }
+
+        private void addStatements(long roomID, List<PendingStatement> statements) {
+            final int roomSize;
+            while (true) {
+                final PendingRoomUpdates updates = getPendingRoomUpdates(roomID);
+                synchronized (updates) {
+                    if (!updates.drained) {
+                        updates.affiliations.addAll(statements);
+                        roomSize = updates.size();
+                        break;
+                    }
+                }
+            }
+            added(statements.size(), roomSize);
+        }
+
+        private void addLogEntry(long roomID, Object[] parameters) {
+            final PendingStatement statement = new PendingStatement(ADD_CONVERSATION_LOG, parameters);
+            final int roomSize;
+            while (true) {
+                final PendingRoomUpdates updates = getPendingRoomUpdates(roomID);
+                synchronized (updates) {
+                    if (!updates.drained) {
+                        updates.logEntries.add(statement);
+                        roomSize = updates.size();
+                        break;
+                    }
+                }
+            }
+            added(1, roomSize);
+        }
+
+        private PendingRoomUpdates getPendingRoomUpdates(long roomID) {
+            PendingRoomUpdates updates = pending.get(roomID);
+            if (updates == null) {
+                final PendingRoomUpdates created = new PendingRoomUpdates();
+                updates = pending.putIfAbsent(roomID, created);
+                if (updates == null) {
+                    updates = created;
+                }
+            }
+            return updates;
+        }
+
+        private void added(int count, int roomSize) {
+            final int total = size.addAndGet(count);
+            if (shutdown || total >= capacity || roomSize >= roomCapacity) {
+                // Apply backpressure: the producer pays for the write
+                flush();
+            }
+            else if (total >= batchSize && flushRequested.compareAndSet(false, true)) {
+                try {
+                    executor.execute(flushTask);
+                }
+                catch (RejectedExecutionException e) {
+                    flushRequested.set(false);
+                    flush();
+                }
+            }
+        }
+
+        /**
+         * Drops the pending changes of a room, except for its conversation log entries which
+         * outlive the room and are written with the next flush.
+         */
+        private void discard(long roomID) {
+            synchronized (flushLock) {
+                final PendingRoomUpdates updates = pending.get(roomID);
+                if (updates != null) {
+                    final PendingRoomUpdates logEntries = new PendingRoomUpdates();
+                    synchronized (updates) {
+                        updates.drained = true;
+                        size.addAndGet(-updates.size());
+                        logEntries.logEntries.addAll(updates.logEntries);
+                    }
+                    pending.remove(roomID, updates);
+                    if (!logEntries.logEntries.isEmpty()) {
+                        requeue(roomID, logEntries);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Writes all the pending changes to the database. Changes that could not be written
+         * are put back in the queue.
+         */
+        private void flush() {
+            synchronized (flushLock) {
+                final Map<Long, PendingRoomUpdates> drained = new LinkedHashMap<>();
+                final List<PendingStatement> roomUpdates = new ArrayList<>();
+                final List<PendingStatement> affiliations = new ArrayList<>();
+                final List<PendingStatement> logEntries = new ArrayList<>();
+                int count = 0;
+                for (final Map.Entry<Long, PendingRoomUpdates> entry : pending.entrySet()) {
+                    final PendingRoomUpdates updates = entry.getValue();
+                    synchronized (updates) {
+                        updates.drained = true;
+                        PendingRoomUpdates.addIfPresent(roomUpdates, updates.configuration);
+                        PendingRoomUpdates.addIfPresent(roomUpdates, updates.subject);
+                        PendingRoomUpdates.addIfPresent(roomUpdates, updates.lock);
+                        PendingRoomUpdates.addIfPresent(roomUpdates, updates.emptyDate);
+                        affiliations.addAll(updates.affiliations);
+                        logEntries.addAll(updates.logEntries);
+                        count += updates.size();
+                    }
+                    pending.remove(entry.getKey(), updates);
+                    drained.put(entry.getKey(), updates);
+                }
+                if (count == 0) {
+                    return;
+                }
+                size.addAndGet(-count);
+
+                // Group the coalesced room updates by statement to get the largest batches
+                Collections.sort(roomUpdates, new Comparator<PendingStatement>() {
+                    @Override
+                    public int compare(PendingStatement o1, PendingStatement o2) {
+                        return o1.sql.compareTo(o2.sql);
+                    }
+                });
+
+                try {
+                    executeInTransaction(roomUpdates, affiliations, logEntries);
+                    return;
+                }
+                catch (SQLException sqle) {
+                    Log.warn("Unable to write " + count
+                            + " pending MUC updates to the database, writing them room by room.", sqle);
+                }
+                for (final Map.Entry<Long, PendingRoomUpdates> entry : drained.entrySet()) {
+                    flushRoom(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        private void flushRoom(long roomID, PendingRoomUpdates updates) {
+            final List<PendingStatement> statements = updates.getStatements();
+            try {
+                executeInTransaction(statements);
+                return;
+            }
+            catch (SQLException sqle) {
+                updates.failedAttempts++;
+                if (updates.failedAttempts < MAX_FAILED_ATTEMPTS) {
+                    Log.warn("Unable to write " + statements.size() + " pending updates of MUC room "
+                            + roomID + " to the database, they will be retried.", sqle);
+                    requeue(roomID, updates);
+                    return;
+                }
+            }
+            // The room keeps failing: isolate the statements that can't be written
+            for (final PendingStatement statement : statements) {
+                try {
+                    executeInTransaction(Collections.singletonList(statement));
+                }
+                catch (SQLException sqle) {
+                    Log.error("Dropping pending update of MUC room " + roomID + " after "
+                            + MAX_FAILED_ATTEMPTS + " failed attempts: " + statement.sql, sqle);
+                }
+            }
+        }
+
+        /**
+         * Puts updates that could not be written back in the queue, before the changes that
+         * were queued for the same room in the meantime.
+         */
+        private void requeue(long roomID, PendingRoomUpdates failed) {
+            final int added;
+            while (true) {
+                final PendingRoomUpdates updates = getPendingRoomUpdates(roomID);
+                synchronized (updates) {
+                    if (!updates.drained) {
+                        final int before = updates.size();
+                        // Coalesced updates queued in the meantime are newer
+                        if (updates.configuration == null) {
+                            updates.configuration = failed.configuration;
+                        }
+                        if (updates.subject == null) {
+                            updates.subject = failed.subject;
+                        }
+                        if (updates.lock == null) {
+                            updates.lock = failed.lock;
+                        }
+                        if (updates.emptyDate == null) {
+                            updates.emptyDate = failed.emptyDate;
+                        }
+                        updates.affiliations.addAll(0, failed.affiliations);
+                        updates.logEntries.addAll(0, failed.logEntries);
+                        updates.failedAttempts = Math.max(updates.failedAttempts, failed.failedAttempts);
+                        added = updates.size() - before;
+                        break;
+                    }
+                }
+            }
+            size.addAndGet(added);
+        }
+
+        @SafeVarargs
+        private static void executeInTransaction(List<PendingStatement>... statements) throws SQLException {
+            Connection con = null;
+            boolean abortTransaction = true;
+            try {
+                con = DbConnectionManager.getTransactionConnection();
+                for (final List<PendingStatement> list : statements) {
+                    executeStatements(con, list);
+                }
+                abortTransaction = false;
+            }
+            finally {
+                DbConnectionManager.closeTransactionConnection(con, abortTransaction);
+            }
+        }
+
+        private void shutdown() {
+            shutdown = true;
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                    Log.warn("The MUC write-behind queue did not stop in time.");
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flush();
+        }
+    }
+
+    /**
+     * An open addressing map of room IDs to rooms, used while bulk loading the persistent
+     * rooms so that merging history, affiliation and member rows does not box every room ID.
+     * Instances are not thread safe, but can be read concurrently once they were filled.
+     */
+    private static final class RoomMap {
+        private long[] keys = new long[1024];
+        private LocalMUCRoom[] values = new LocalMUCRoom[1024];
+        private final List<LocalMUCRoom> rooms = new ArrayList<>();
+
+        private void put(long roomID, LocalMUCRoom room) {
+            if ((rooms.size() + 1) * 2 > keys.length) {
+                resize();
+            }
+            int index = indexOf(keys, values, roomID);
+            if (values[index] == null) {
+                keys[index] = roomID;
+                rooms.add(room);
+            }
+            else {
+                rooms.set(rooms.indexOf(values[index]), room);
+            }
+            values[index] = room;
+        }
+
+        private LocalMUCRoom get(long roomID) {
+            return values[indexOf(keys, values, roomID)];
+        }
+
+        private List<LocalMUCRoom> values() {
+            return rooms;
+        }
+
+        private void resize() {
+            final long[] oldKeys = keys;
+            final LocalMUCRoom[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new LocalMUCRoom[oldValues.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) {
+                    final int index = indexOf(keys, values, oldKeys[i]);
+                    keys[index] = oldKeys[i];
+                    values[index] = oldValues[i];
+                }
+            }
+        }
+
+        private static int indexOf(long[] keys, LocalMUCRoom[] values, long roomID) {
+            final int mask = keys.length - 1;
+            long hash = roomID * 0x9E3779B97F4A7C15L;
+            int index = (int) (hash ^ (hash >>> 32)) & mask;
+            while (values[index] != null && keys[index] != roomID) {
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+    }
 }
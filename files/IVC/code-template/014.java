@@ -35,8 +35,18 @@ import java.text.SimpleDateFormat;
 import java.text.StringCharacterIterator;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Utilities.
@@ -59,6 +69,15 @@ public class Utils {
 	private static final String userPhoneAttribute = "urn:perun:user:attribute-def:def:phone";
 	private static final String memberPhoneAttribute = "urn:perun:member:attribute-def:def:phone";
 
+	// blocks of sequence values reserved in advance by getNewIdPooled(), per data source and sequence
+	private static final int ID_POOL_BLOCK_SIZE = 100;
+	private static final Map<DataSource, Map<String, IdPool>> idPools = new ConcurrentHashMap<>();
+	private static final ExecutorService idPoolExecutor = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "perun-id-pool");
+		thread.setDaemon(true);
+		return thread;
+	});
+
 	/**
 	 * Replaces dangerous characters.
 	 * Replaces : with - and spaces with _.
@@ -285,30 +304,8 @@ public class Utils {
 	 * @throws InternalErrorException
 	 */
 	public static int getNewId(JdbcTemplate jdbc, String sequenceName) throws InternalErrorException {
-		String dbType;
-		String url = "";
 		String query;
-		// try to deduce database type from jdbc connection metadata
-		try {
-			DataSource ds = jdbc.getDataSource();
-			if (ds instanceof BasicDataSource) {
-				url = ((BasicDataSource) ds).getUrl();
-			}
-		} catch (Exception e) {
-			log.error("cannot get JDBC url", e);
-		}
-
-		if (url.contains("hsqldb")) {
-			dbType = "hsqldb";
-		} else if (url.contains("oracle")) {
-			dbType = "oracle";
-		} else if (url.contains("postgresql")) {
-			dbType = "postgresql";
-		} else {
-			dbType = BeansUtils.getCoreConfig().getDbType();
-		}
-
-		switch (dbType) {
+		switch (getDbType(jdbc)) {
 			case "oracle":
 				query = "select " + sequenceName + ".nextval from dual";
 				break;
@@ -330,6 +327,174 @@ public class Utils {
 		}
 	}
 
+	/**
+	 * Gets the given number of next numbers from the sequence in one round-trip (where the database allows it).
+	 * The numbers are unique, but not necessarily consecutive.
+	 *
+	 * @param jdbc
+	 * @param sequenceName
+	 * @param count number of IDs to get
+	 * @return new IDs
+	 * @throws InternalErrorException
+	 */
+	public static int[] getNewIds(JdbcTemplate jdbc, String sequenceName, int count) throws InternalErrorException {
+		String query;
+		switch (getDbType(jdbc)) {
+			case "oracle":
+				query = "select " + sequenceName + ".nextval from dual connect by level <= ?";
+				break;
+			case "postgresql":
+				query = "select nextval('" + sequenceName + "') from generate_series(1, ?)";
+				break;
+			case "hsqldb":
+				// no row generator is used here, the embedded database is cheap to call
+				int[] ids = new int[count];
+				for (int i = 0; i < count; i++) {
+					ids[i] = getNewId(jdbc, sequenceName);
+				}
+				return ids;
+			default:
+				throw new InternalErrorException("Unsupported DB type");
+		}
+
+		List<Integer> result;
+		try {
+			result = jdbc.queryForList(query, Integer.class, count);
+		} catch (RuntimeException e) {
+			throw new InternalErrorException(e);
+		}
+		if (result.size() != count) {
+			throw new InternalErrorException("Expected " + count + " values of sequence " + sequenceName + " but got " + result.size());
+		}
+		int[] ids = new int[count];
+		for (int i = 0; i < count; i++) {
+			ids[i] = result.get(i);
+		}
+		return ids;
+	}
+
+	/**
+	 * Gets a new ID from the sequence like {@link #getNewId(JdbcTemplate, String)}, but takes it from a block
+	 * of IDs reserved in advance, so that bulk inserts do not need a database round-trip per ID.
+	 * The next block is fetched in the background when the current one is running low.
+	 * IDs reserved but not used before shutdown are lost, i.e. the sequence gets gaps.
+	 *
+	 * @param jdbc
+	 * @param sequenceName
+	 * @return new ID
+	 * @throws InternalErrorException
+	 */
+	public static int getNewIdPooled(JdbcTemplate jdbc, String sequenceName) throws InternalErrorException {
+		Map<String, IdPool> pools = idPools.computeIfAbsent(jdbc.getDataSource(), ds -> new ConcurrentHashMap<>());
+		return pools.computeIfAbsent(sequenceName, name -> new IdPool(jdbc, name, ID_POOL_BLOCK_SIZE)).next();
+	}
+
+	/**
+	 * IDs of one sequence reserved in advance. IDs are handed out of the current block without locking,
+	 * only switching to the next block is synchronized.
+	 */
+	private static final class IdPool {
+		private final JdbcTemplate jdbc;
+		private final String sequenceName;
+		private final int blockSize;
+		private volatile IdBlock current;
+		// next block, fetched in the background once the current one is running low
+		private CompletableFuture<int[]> prefetched;
+
+		private IdPool(JdbcTemplate jdbc, String sequenceName, int blockSize) {
+			this.jdbc = jdbc;
+			this.sequenceName = sequenceName;
+			this.blockSize = blockSize;
+		}
+
+		private int next() throws InternalErrorException {
+			while (true) {
+				IdBlock block = current;
+				if (block != null) {
+					int index = block.next.getAndIncrement();
+					if (index < block.ids.length) {
+						// exactly one caller gets this index
+						if (index == block.refillAt) {
+							prefetch();
+						}
+						return block.ids[index];
+					}
+				}
+				switchBlock(block);
+			}
+		}
+
+		private synchronized void prefetch() {
+			if (prefetched == null) {
+				prefetched = CompletableFuture.supplyAsync(() -> {
+					try {
+						return getNewIds(jdbc, sequenceName, blockSize);
+					} catch (InternalErrorException e) {
+						throw new CompletionException(e);
+					}
+				}, idPoolExecutor);
+			}
+		}
+
+		private synchronized void switchBlock(IdBlock exhausted) throws InternalErrorException {
+			if (current != exhausted) {
+				// already switched by another caller
+				return;
+			}
+			int[] ids = null;
+			if (prefetched != null) {
+				try {
+					ids = prefetched.join();
+				} catch (CompletionException e) {
+					log.warn("Prefetching IDs of sequence {} failed, fetching them again.", sequenceName, e.getCause());
+				}
+				prefetched = null;
+			}
+			if (ids == null) {
+				ids = getNewIds(jdbc, sequenceName, blockSize);
+			}
+			current = new IdBlock(ids);
+		}
+	}
+
+	private static final class IdBlock {
+		private final int[] ids;
+		private final int refillAt;
+		private final AtomicInteger next = new AtomicInteger();
+
+		private IdBlock(int[] ids) {
+			this.ids = ids;
+			// start fetching the next block when a quarter of this one is left
+			this.refillAt = ids.length - Math.max(1, ids.length / 4);
+		}
+	}
+
+	/**
+	 * Deduces the database type from the JDBC url, or falls back to the configured one.
+	 */
+	private static String getDbType(JdbcTemplate jdbc) {
+		String url = "";
+		// try to deduce database type from jdbc connection metadata
+		try {
+			DataSource ds = jdbc.getDataSource();
+			if (ds instanceof BasicDataSource) {
+				url = ((BasicDataSource) ds).getUrl();
+			}
+		} catch (Exception e) {
+			log.error("cannot get JDBC url", e);
+		}
+
+		if (url.contains("hsqldb")) {
+			return "hsqldb";
+		} else if (url.contains("oracle")) {
+			return "oracle";
+		} else if (url.contains("postgresql")) {
+			return "postgresql";
+		} else {
+			return BeansUtils.getCoreConfig().getDbType();
+		}
+	}
+
 	/**
 	 * Returns current time in millis. Result of this call can then be used by function getRunningTime().
 	 *
@@ -626,10 +791,30 @@ public class Utils {
 	 *
 	 * @param pattern
 	 * @return list of all generated strings
+	 * @see #streamStringsByPattern(String)
 	 */
 	public static List<String> generateStringsByPattern(String pattern) throws WrongPatternException {
-		List<String> result = new ArrayList<String>();
+		return streamStringsByPattern(pattern).collect(Collectors.toCollection(ArrayList::new));
+	}
+
+	/**
+	 * Lazily generates strings by pattern, in the same order as {@link #generateStringsByPattern(String)}.
+	 * Strings are created one at a time while the stream is consumed, so even patterns with millions of
+	 * combinations can be searched without holding them in memory, e.g.
+	 * {@code streamStringsByPattern(pattern).filter(login -> !existing.contains(login)).findFirst()}.
+	 * The stream is sized and splits evenly, so it can also be consumed in parallel.
+	 *
+	 * @param pattern
+	 * @return stream of all generated strings
+	 */
+	public static Stream<String> streamStringsByPattern(String pattern) throws WrongPatternException {
+		return StreamSupport.stream(new PatternSpliterator(parsePattern(pattern)), false);
+	}
 
+	/**
+	 * Parses the pattern into the literals and ranges which are joined by {@link PatternSpliterator}.
+	 */
+	private static PatternPart[] parsePattern(String pattern) throws WrongPatternException {
 		// get chars between the brackets
 		List<String> values = new ArrayList<String>(Arrays.asList(pattern.split("\\[[^\\]]*\\]")));
 		// get content of the brackets
@@ -654,8 +839,8 @@ public class Utils {
 			}
 		}
 
-		// list, that contains list for each generator, with already generated numbers
-		List<List<String>> listOfGenerated = new ArrayList<List<String>>();
+		// one range part for each generator
+		List<PatternPart> ranges = new ArrayList<PatternPart>();
 
 		Pattern rangePattern = Pattern.compile("^(\\d+)-(\\d+)$");
 		for (String range: generators) {
@@ -678,30 +863,8 @@ public class Utils {
 
 				}
 
-				// find out, how many zeros are before start number
-				int zerosInStart = 0;
-				int counter = 0;
-				while ( (start.charAt(counter) == '0') && (counter < start.length()-1) ) {
-					zerosInStart++;
-					counter++;
-				}
-
-				String zeros = start.substring(0, zerosInStart);
-				int oldNumberOfDigits = String.valueOf(startNumber).length();
-
-				// list of already generated numbers
-				List<String> generated = new ArrayList<String>();
-				while (endNumber >= startNumber) {
-					// keep right number of zeros before number
-					if (String.valueOf(startNumber).length() == oldNumberOfDigits +1) {
-						if (!zeros.isEmpty()) zeros = zeros.substring(1);
-					}
-					generated.add(zeros + startNumber);
-					oldNumberOfDigits = String.valueOf(startNumber).length();
-					startNumber++;
-				}
-
-				listOfGenerated.add(generated);
+				// numbers keep the zeros before the start number, i.e. are padded to its length
+				ranges.add(new PatternPart(null, startNumber, endNumber, start.length()));
 
 			} else {
 				// range is not in the format number-number -> abort
@@ -709,63 +872,148 @@ public class Utils {
 			}
 		}
 
-		// add values among the generated numbers as one item lists
-		List<List<String>> listOfGeneratorsAndValues = new ArrayList<List<String>>();
+		// put values among the ranges
+		List<PatternPart> parts = new ArrayList<PatternPart>();
 		int index = 0;
 
-		for (List<String> list : listOfGenerated) {
+		for (PatternPart range : ranges) {
 			if (index < values.size()) {
-				List<String> listWithValue = new ArrayList<>();
-				listWithValue.add(values.get(index));
-				listOfGeneratorsAndValues.add(listWithValue);
+				parts.add(new PatternPart(values.get(index), 0, 0, 0));
 				index++;
 			}
-			listOfGeneratorsAndValues.add(list);
+			parts.add(range);
 		}
 
 		// complete list with remaining values
 		for (int i = index; i < values.size(); i++) {
-			List<String> listWithValue = new ArrayList<>();
-			listWithValue.add(values.get(i));
-			listOfGeneratorsAndValues.add(listWithValue);
+			parts.add(new PatternPart(values.get(i), 0, 0, 0));
 		}
 
-		// generate all posibilities
-		return getCombinationsOfLists(listOfGeneratorsAndValues);
+		long count = parts.isEmpty() ? 0 : 1;
+		for (PatternPart part : parts) {
+			try {
+				count = Math.multiplyExact(count, part.size());
+			} catch (ArithmeticException ex) {
+				throw new WrongPatternException("The pattern \"" + pattern + "\" generates too many strings.");
+			}
+		}
+
+		return parts.toArray(new PatternPart[parts.size()]);
 	}
 
 	/**
-	 * Method generates all combinations of joining of strings.
-	 * It respects given order of lists.
-	 * Example: input: [[a,b],[c,d]], output: [ac,ad,bc,bd]
-	 * @param lists list of lists, which will be joined
-	 * @return all joined strings
+	 * Part of a pattern: either a literal, or a range of numbers padded with zeros to the given width.
 	 */
-	private static List<String> getCombinationsOfLists(List<List<String>> lists) {
-		if (lists.isEmpty()) {
-			// this should not happen
-			return new ArrayList<>();
-		}
-		if (lists.size() == 1) {
-			return lists.get(0);
+	private static final class PatternPart {
+		private final String literal;
+		private final int start;
+		private final int end;
+		private final int width;
+
+		private PatternPart(String literal, int start, int end, int width) {
+			this.literal = literal;
+			this.start = start;
+			this.end = end;
+			this.width = width;
 		}
-		List<String> result = new ArrayList<String>();
 
-		List<String> list = lists.remove(0);
-		// get recursively all posibilities without first list
-		List<String> posibilities = getCombinationsOfLists(lists);
+		private long size() {
+			return literal != null ? 1 : (long) end - start + 1;
+		}
 
-		// join all strings from first list with the others
-		for (String item: list) {
-			if (posibilities.isEmpty()) {
-				result.add(item);
+		private void appendTo(StringBuilder sb, long offset) {
+			if (literal != null) {
+				sb.append(literal);
 			} else {
-				for (String itemToConcat : posibilities) {
-					result.add(item + itemToConcat);
+				String number = Long.toString(start + offset);
+				for (int i = number.length(); i < width; i++) {
+					sb.append('0');
+				}
+				sb.append(number);
+			}
+		}
+	}
+
+	/**
+	 * Enumerates all combinations of the pattern parts with an odometer: the offset into each part,
+	 * where the last part changes fastest. Splitting decodes the odometer for the middle combination.
+	 */
+	private static final class PatternSpliterator implements Spliterator<String> {
+		private final PatternPart[] parts;
+		private final long[] offsets;
+		private long index;
+		private final long end;
+
+		private PatternSpliterator(PatternPart[] parts) {
+			this(parts, 0, count(parts));
+		}
+
+		private PatternSpliterator(PatternPart[] parts, long index, long end) {
+			this.parts = parts;
+			this.offsets = new long[parts.length];
+			this.end = end;
+			seek(index);
+		}
+
+		private static long count(PatternPart[] parts) {
+			// no parts means no strings; the product cannot overflow, see parsePattern
+			long count = parts.length == 0 ? 0 : 1;
+			for (PatternPart part : parts) {
+				count *= part.size();
+			}
+			return count;
+		}
+
+		private void seek(long index) {
+			this.index = index;
+			long rest = index;
+			for (int i = parts.length - 1; i >= 0; i--) {
+				long size = parts[i].size();
+				offsets[i] = rest % size;
+				rest /= size;
+			}
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super String> action) {
+			if (index >= end) {
+				return false;
+			}
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < parts.length; i++) {
+				parts[i].appendTo(sb, offsets[i]);
+			}
+			index++;
+			for (int i = parts.length - 1; i >= 0; i--) {
+				if (++offsets[i] < parts[i].size()) {
+					break;
 				}
+				offsets[i] = 0;
+			}
+			action.accept(sb.toString());
+			return true;
+		}
+
+		@Override
+		public Spliterator<String> trySplit() {
+			long mid = index + (end - index) / 2;
+			if (mid <= index) {
+				return null;
 			}
+			PatternSpliterator prefix = new PatternSpliterator(parts, index, mid);
+			seek(mid);
+			return prefix;
+		}
+
+		@Override
+		public long estimateSize() {
+			return end - index;
+		}
+
+		@Override
+		public int characteristics() {
+			return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
 		}
-		return result;
 	}
 
 	/**
@@ -295,14 +295,15 @@ public abstract class AbstractMessageParser {
     if (match == null) {
       return false;
     } else {
+      int length = match.getTextLength();
       int previousCharClass = getCharClass(nextChar - 1);
-      int nextCharClass = getCharClass(nextChar + match.getText().length());
+      int nextCharClass = getCharClass(nextChar + length);
       if ((previousCharClass == 2 || previousCharClass == 3)
           && (nextCharClass == 2 || nextCharClass == 3)) {
         return false;
       }
       addToken(new Smiley(match.getText()));
-      nextChar += match.getText().length();
+      nextChar += length;
       return true;
     }
   }
@@ -1335,36 +1336,114 @@ public abstract class AbstractMessageParser {
     return buf.toString();
   }
 
+  /**
+   * A trie node.  Children are kept in a char array sorted for binary search,
+   * and the text of a node is derived from its parent chain on demand instead
+   * of being stored at every node.
+   */
   public static class TrieNode {
-    private final HashMap<Character,TrieNode> children =
-        new HashMap<Character,TrieNode>();
+    private static final char[] NO_CHARS = new char[0];
+    private static final TrieNode[] NO_NODES = new TrieNode[0];
+
+    private char[] childChars = NO_CHARS;
+    private TrieNode[] childNodes = NO_NODES;
+    private int childCount;
+    private final TrieNode parent;
+    private final char ch;
     private String text;
     private String value;
 
     public TrieNode() { this(""); }
     public TrieNode(String text) {
+      this.parent = null;
+      this.ch = 0;
       this.text = text;
     }
 
+    private TrieNode(TrieNode parent, char ch) {
+      this.parent = parent;
+      this.ch = ch;
+    }
+
     public final boolean exists() { return value != null; }
-    public final String getText() { return text; }
     public final String getValue() { return value; }
     public void setValue(String value) { this.value = value; }
 
+    public final String getText() {
+      if (text == null) {
+        StringBuilder buf = new StringBuilder();
+        TrieNode node = this;
+        while (node.text == null) {
+          buf.append(node.ch);
+          node = node.parent;
+        }
+        buf.reverse();
+        text = node.text + buf;
+      }
+      return text;
+    }
+
+    /** Returns the number of characters of the text of this node. */
+    public final int getTextLength() {
+      int length = 0;
+      TrieNode node = this;
+      while (node.text == null) {
+        length++;
+        node = node.parent;
+      }
+      return length + node.text.length();
+    }
+
     public TrieNode getChild(char ch) {
-      return children.get(Character.valueOf(ch));
+      int index = indexOf(ch);
+      return index >= 0 ? childNodes[index] : null;
     }
 
     public TrieNode getOrCreateChild(char ch) {
-      Character key = Character.valueOf(ch);
-      TrieNode node = children.get(key);
-      if (node == null) {
-        node = new TrieNode(text + String.valueOf(ch));
-        children.put(key, node);
+      int index = indexOf(ch);
+      if (index >= 0) {
+        return childNodes[index];
       }
+      index = -(index + 1);
+      if (childCount == childChars.length) {
+        int capacity = Math.max(2, childCount * 2);
+        char[] chars = new char[capacity];
+        TrieNode[] nodes = new TrieNode[capacity];
+        System.arraycopy(childChars, 0, chars, 0, childCount);
+        System.arraycopy(childNodes, 0, nodes, 0, childCount);
+        childChars = chars;
+        childNodes = nodes;
+      }
+      System.arraycopy(childChars, index, childChars, index + 1, childCount - index);
+      System.arraycopy(childNodes, index, childNodes, index + 1, childCount - index);
+      TrieNode node = new TrieNode(this, ch);
+      childChars[index] = ch;
+      childNodes[index] = node;
+      childCount++;
       return node;
     }
 
+    /**
+     * Returns the index of the given child character, or
+     * <code>-(insertion point) - 1</code> if there is no such child.
+     */
+    private int indexOf(char ch) {
+      int low = 0;
+      int high = childCount - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        char midCh = childChars[mid];
+        if (midCh < ch) {
+          low = mid + 1;
+        } else if (midCh > ch) {
+          high = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -(low + 1);
+    }
+
     /** Adds the given string into the trie. */
     public static  void addToTrie(TrieNode root, String str, String value) {
       int index = 0;
@@ -1407,10 +1486,12 @@ public abstract class AbstractMessageParser {
    */
   private static TrieNode longestMatch(
       TrieNode root, AbstractMessageParser p, int start, boolean smiley) {
+    String text = p.getRawText();
+    int length = text.length();
     int index = start;
     TrieNode bestMatch = null;
-    while (index < p.getRawText().length()) {
-      root = root.getChild(p.getRawText().charAt(index++));
+    while (index < length) {
+      root = root.getChild(text.charAt(index++));
       if (root == null) {
         break;
       } else if (root.exists()) {
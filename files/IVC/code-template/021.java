@@ -15,6 +15,7 @@ import org.oclc.oai.util.OAIUtil;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.sql.*;
 import java.util.*;
@@ -64,6 +65,31 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
      */
     private String               aboutQuery             = null;
 
+    /**
+     * SQL keyset range queries (loaded from properties, optional) \\f -> from,
+     * \\u -> until, \\s -> set, \\k -> key of the last record returned, \\b
+     * -> page size. If present, ListRecords and ListIdentifiers seek past the
+     * last returned key instead of skipping an ever growing OFFSET. These
+     * queries, as well as rangeQuery and rangeSetQuery (used for the first
+     * page), must be ordered by the unique column whose "table.column" name is
+     * given by keyLabel. Their placeholders are always bound as parameters,
+     * with the type the driver reports for them.
+     */
+    private CompiledQuery        keysetRangeQuery       = null;
+    private CompiledQuery        keysetRangeSetQuery    = null;
+    private String               keyLabel               = null;
+
+    /**
+     * rangeQuery, rangeSetQuery, identifierQuery, setSpecQuery and aboutQuery
+     * compiled into parameterized statements (null if a template can't be
+     * parameterized, in which case the values are substituted into its text)
+     */
+    private CompiledQuery        compiledRangeQuery     = null;
+    private CompiledQuery        compiledRangeSetQuery  = null;
+    private CompiledQuery        compiledIdentifierQuery = null;
+    private CompiledQuery        compiledSetSpecQuery   = null;
+    private CompiledQuery        compiledAboutQuery     = null;
+
     /**
      * SQL column labels containing the values of particular interest
      */
@@ -99,6 +125,13 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
      */
     private HashMap              resumptionResults      = new HashMap();
 
+    /**
+     * idle prepared statements of the persistent connection, keyed by
+     * CompiledQuery
+     */
+    private HashMap              preparedStatements     = new HashMap();
+    private Connection           preparedConnection;
+
     /**
      * Construct a ExtendedJDBCOAICatalog object
      * 
@@ -141,6 +174,16 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
             if (aboutValueLabel == null) { throw new IllegalArgumentException("ExtendedJDBCOAICatalog.aboutValueLabel is missing from the properties file"); }
         }
 
+        String keysetQuery = properties.getProperty("ExtendedJDBCOAICatalog.keysetRangeQuery");
+        if (keysetQuery != null) {
+            String keysetSetQuery = properties.getProperty("ExtendedJDBCOAICatalog.keysetRangeSetQuery");
+            if (keysetSetQuery == null) { throw new IllegalArgumentException("ExtendedJDBCOAICatalog.keysetRangeSetQuery is missing from the properties file"); }
+            keyLabel = properties.getProperty("ExtendedJDBCOAICatalog.keyLabel");
+            if (keyLabel == null) { throw new IllegalArgumentException("ExtendedJDBCOAICatalog.keyLabel is missing from the properties file"); }
+            keysetRangeQuery = new CompiledQuery(keysetQuery, "bfuk");
+            keysetRangeSetQuery = new CompiledQuery(keysetSetQuery, "bfusk");
+        }
+
         setSpecQuery = properties.getProperty("ExtendedJDBCOAICatalog.setSpecQuery");
         setSpecItemLabel = properties.getProperty("ExtendedJDBCOAICatalog.setSpecItemLabel");
         if (setSpecItemLabel == null) { throw new IllegalArgumentException("ExtendedJDBCOAICatalog.setSpecItemLabel is missing from the properties file"); }
@@ -167,6 +210,12 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
             }
         }
 
+        compiledRangeQuery = compileQuery(rangeQuery, "abfu");
+        compiledRangeSetQuery = compileQuery(rangeSetQuery, "abfus");
+        compiledIdentifierQuery = compileQuery(identifierQuery, "io");
+        compiledSetSpecQuery = compileQuery(setSpecQuery, "io");
+        compiledAboutQuery = compileQuery(aboutQuery, "io");
+
         String temp = properties.getProperty("ExtendedJDBCOAICatalog.isPersistentConnection");
         if ("false".equalsIgnoreCase(temp)) isPersistentConnection = false;
 
@@ -228,10 +277,10 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
     @Override
     public Vector getSchemaLocations(String oaiIdentifier) throws OAIInternalServerError, IdDoesNotExistException, NoMetadataFormatsException {
         Connection con = null;
+        QueryCursor rs = null;
         try {
             con = startConnection();
-            Statement stmt = con.createStatement();
-            ResultSet rs = stmt.executeQuery(populateIdentifierQuery(oaiIdentifier));
+            rs = openIdentifierQuery(con, oaiIdentifier);
             /*
              * Let your recordFactory decide which schemaLocations (i.e.
              * metadataFormats) it can produce from the record. Doing so will
@@ -240,6 +289,7 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
              * responsibility of the RecordFactory implementation).
              */
             if (!rs.next()) {
+                rs.close();
                 endConnection(con);
                 throw new IdDoesNotExistException(oaiIdentifier);
             } else {
@@ -249,11 +299,13 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
                  * item
                  */
                 HashMap nativeItem = new HashMap();
-                nativeItem.put("coreResult", getColumnValues(rs));
+                nativeItem.put("coreResult", rs.readColumnValues());
+                rs.close();
                 endConnection(con);
                 return getRecordFactory().getSchemaLocations(nativeItem);
             }
         } catch (SQLException e) {
+            if (rs != null) rs.close();
             if (con != null) endConnection(con);
             e.printStackTrace();
             throw new OAIInternalServerError(e.getMessage());
@@ -301,6 +353,491 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
         return tableItems;
     }
 
+    /**
+     * Copies the columns of consecutive rows of one ResultSet into a single,
+     * reused HashMap. The "table.column" field names are computed once from
+     * the metadata rather than for every row.
+     */
+    private static class ColumnReader {
+        private final String[] fieldNames;
+        private final HashMap  tableItems;
+
+        ColumnReader(ResultSet rs) throws SQLException {
+            ResultSetMetaData mdata = rs.getMetaData();
+            int count = mdata.getColumnCount();
+            fieldNames = new String[count];
+            for (int i = 1; i <= count; ++i) {
+                fieldNames[i - 1] = mdata.getTableName(i) + "." + mdata.getColumnName(i);
+            }
+            tableItems = new HashMap(count * 2);
+        }
+
+        /**
+         * Read the current row. The returned HashMap is overwritten by the
+         * next call, so it must not be retained.
+         * 
+         * @param rs
+         *            The ResultSet positioned on the row
+         * @return a HashMap mapping column names with values
+         */
+        HashMap read(ResultSet rs) throws SQLException {
+            for (int i = 0; i < fieldNames.length; ++i) {
+                Object value = rs.getObject(i + 1);
+                tableItems.put(fieldNames[i], value);
+                if (debug) System.out.println(fieldNames[i] + "=" + value);
+            }
+            return tableItems;
+        }
+    }
+
+    /**
+     * A query template compiled once into SQL with JDBC parameter markers.
+     * Each \\x placeholder of the template whose letter is accepted becomes a
+     * '?' marker; surrounding single quotes are dropped since the value is
+     * bound as a parameter. Other backslash sequences are kept unchanged. A
+     * placeholder embedded in a longer string literal (e.g. '%\\s%') can't be
+     * bound and is rejected with an IllegalArgumentException.
+     * <p>
+     * The text values (from, until, set and identifiers) are bound with the
+     * SQL type the driver reports for their marker, so that the database
+     * converts them like the untyped literals they used to be substituted as.
+     */
+    private static class CompiledQuery {
+        private static final String TEXT_PLACEHOLDERS = "fusio";
+
+        private final String sql;
+        private final char[] parameters;
+        private final boolean[] quoted;
+        private volatile int[] types;
+
+        CompiledQuery(String template, String placeholders) {
+            StringBuffer sb = new StringBuffer(template.length());
+            StringBuffer params = new StringBuffer();
+            ArrayList quotes = new ArrayList();
+            int length = template.length();
+            boolean inLiteral = false;
+            for (int i = 0; i < length; ++i) {
+                char c = template.charAt(i);
+                if (c == '\\' && i + 1 < length && placeholders.indexOf(template.charAt(i + 1)) >= 0) {
+                    char placeholder = template.charAt(++i);
+                    if (inLiteral) {
+                        int last = sb.length() - 1;
+                        if (sb.charAt(last) != '\'' || i + 1 >= length || template.charAt(i + 1) != '\'') throw new IllegalArgumentException("Placeholder \\" + placeholder + " can't be bound inside a literal: " + template);
+                        sb.setLength(last);
+                        inLiteral = false;
+                        ++i;
+                        quotes.add(Boolean.TRUE);
+                    } else {
+                        quotes.add(Boolean.FALSE);
+                    }
+                    sb.append('?');
+                    params.append(placeholder);
+                } else {
+                    if (c == '\'') inLiteral = !inLiteral;
+                    sb.append(c);
+                }
+            }
+            if (sb.length() == 0) throw new IllegalArgumentException("Invalid query: " + template);
+            sql = sb.toString();
+            parameters = params.toString().toCharArray();
+            quoted = new boolean[quotes.size()];
+            for (int i = 0; i < quoted.length; ++i) quoted[i] = ((Boolean)quotes.get(i)).booleanValue();
+        }
+
+        /**
+         * Whether a text placeholder appears outside of quotes, e.g. id=\\i.
+         * Its SQL type is then only known if the driver reports it.
+         */
+        boolean hasUnquotedText() {
+            for (int i = 0; i < parameters.length; ++i) {
+                if (!quoted[i] && TEXT_PLACEHOLDERS.indexOf(parameters[i]) >= 0) return true;
+            }
+            return false;
+        }
+
+        /**
+         * Get the SQL type of a marker from the ParameterMetaData of the
+         * statement, resolved once per query. Markers the driver can't
+         * describe are VARCHAR.
+         */
+        int parameterType(PreparedStatement stmt, int index) {
+            int[] resolved = types;
+            if (resolved == null) {
+                resolved = new int[parameters.length];
+                Arrays.fill(resolved, Types.VARCHAR);
+                try {
+                    ParameterMetaData metaData = stmt.getParameterMetaData();
+                    for (int i = 0; i < resolved.length; ++i) {
+                        int type = metaData.getParameterType(i + 1);
+                        if (type != Types.OTHER && type != Types.NULL) resolved[i] = type;
+                    }
+                } catch (SQLException e) {
+                    if (debug) System.out.println("ExtendedJDBCOAICatalog.parameterType: " + e.getMessage());
+                } catch (AbstractMethodError e) {
+                    // pre JDBC 3.0 driver
+                }
+                types = resolved;
+            }
+            return resolved[index - 1];
+        }
+
+        /**
+         * Bind a text value: as a string to a character marker, converted by
+         * the driver to the marker's type otherwise.
+         */
+        void bindText(PreparedStatement stmt, int index, String value) throws SQLException {
+            int type = parameterType(stmt, index);
+            if (value == null) {
+                stmt.setNull(index, type);
+                return;
+            }
+            switch (type) {
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.CLOB:
+                stmt.setString(index, value);
+                break;
+            default:
+                stmt.setObject(index, value, type);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Compile a query template, or return null if it can only be used by
+     * substituting the values into the SQL text. Templates with unquoted text
+     * placeholders keep the substitution, which lets the database coerce
+     * the value even when the driver can't report the type of a marker.
+     * 
+     * @param template
+     *            the query template loaded from the properties
+     * @param placeholders
+     *            the placeholder letters accepted by the template
+     * @return the CompiledQuery or null
+     */
+    private static CompiledQuery compileQuery(String template, String placeholders) {
+        if (template == null) return null;
+        try {
+            CompiledQuery query = new CompiledQuery(template, placeholders);
+            return query.hasUnquotedText() ? null : query;
+        } catch (IllegalArgumentException e) {
+            if (debug) System.out.println("ExtendedJDBCOAICatalog.compileQuery: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Get a prepared statement for the query. Statements of the persistent
+     * connection are reused across requests; return them with
+     * releaseStatement() once the ResultSet was consumed.
+     * 
+     * @param con
+     *            the connection returned by startConnection()
+     * @param query
+     *            the compiled query
+     * @return a PreparedStatement ready to be bound
+     */
+    private PreparedStatement prepareStatement(Connection con, CompiledQuery query) throws SQLException {
+        if (con == persistentConnection) {
+            synchronized (preparedStatements) {
+                if (con != preparedConnection) {
+                    preparedStatements.clear();
+                    preparedConnection = con;
+                }
+                LinkedList idle = (LinkedList)preparedStatements.get(query);
+                if (idle != null && !idle.isEmpty()) return (PreparedStatement)idle.removeFirst();
+            }
+        }
+        if (debug) System.out.println(query.sql);
+        return con.prepareStatement(query.sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    }
+
+    /**
+     * Give back a statement obtained from prepareStatement().
+     * 
+     * @param con
+     *            the connection the statement was prepared on
+     * @param query
+     *            the compiled query
+     * @param stmt
+     *            the statement
+     */
+    private void releaseStatement(Connection con, CompiledQuery query, PreparedStatement stmt) {
+        if (stmt == null) return;
+        synchronized (preparedStatements) {
+            if (con == preparedConnection && con == persistentConnection) {
+                LinkedList idle = (LinkedList)preparedStatements.get(query);
+                if (idle == null) {
+                    idle = new LinkedList();
+                    preparedStatements.put(query, idle);
+                }
+                idle.add(stmt);
+                return;
+            }
+        }
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Bind the from, until, set, page size and key parameters of a range
+     * query.
+     */
+    private void bindRangeQuery(PreparedStatement stmt, CompiledQuery query, String from, String until, String set, int offset, int count, KeysetPosition position) throws SQLException {
+        for (int i = 0; i < query.parameters.length; ++i) {
+            switch (query.parameters[i]) {
+            case 'a':
+                stmt.setInt(i + 1, offset);
+                break;
+            case 'b':
+                stmt.setInt(i + 1, count + 1); // grab an extra record to decide if EOF
+                break;
+            case 'f':
+                query.bindText(stmt, i + 1, formatFromDate(from));
+                break;
+            case 'u':
+                query.bindText(stmt, i + 1, formatUntilDate(until));
+                break;
+            case 's':
+                query.bindText(stmt, i + 1, set);
+                break;
+            case 'k':
+                position.bind(stmt, i + 1);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Bind the local and OAI identifier parameters of an identifier, setSpec
+     * or about query.
+     */
+    private void bindIdentifierQuery(PreparedStatement stmt, CompiledQuery query, String oaiIdentifier) throws SQLException {
+        String localIdentifier = null;
+        for (int i = 0; i < query.parameters.length; ++i) {
+            switch (query.parameters[i]) {
+            case 'i':
+                if (localIdentifier == null) localIdentifier = getRecordFactory().fromOAIIdentifier(oaiIdentifier);
+                query.bindText(stmt, i + 1, localIdentifier);
+                break;
+            case 'o':
+                query.bindText(stmt, i + 1, oaiIdentifier);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Position of a keyset (seek) paginated listing: the number of records
+     * already returned and the key of the last one. It is carried by the
+     * resumptionToken as "k&lt;cursor&gt;~&lt;type&gt;&lt;key&gt;" in place of the offset.
+     */
+    private static class KeysetPosition {
+        private final int    cursor;
+        private final Object key;
+
+        KeysetPosition(int cursor, Object key) {
+            this.cursor = cursor;
+            if (key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte) {
+                this.key = new Long(((Number)key).longValue());
+            } else {
+                this.key = key == null ? null : key.toString();
+            }
+        }
+
+        static KeysetPosition parse(String token) throws BadResumptionTokenException {
+            int separator = token.indexOf('~');
+            if (!token.startsWith("k") || separator < 0 || separator + 1 >= token.length()) throw new BadResumptionTokenException();
+            try {
+                int cursor = Integer.parseInt(token.substring(1, separator));
+                String value = token.substring(separator + 2);
+                switch (token.charAt(separator + 1)) {
+                case 'n':
+                    return new KeysetPosition(cursor, new Long(Long.parseLong(value)));
+                case 's':
+                    return new KeysetPosition(cursor, URLDecoder.decode(value, "UTF-8"));
+                default:
+                    throw new BadResumptionTokenException();
+                }
+            } catch (NumberFormatException e) {
+                throw new BadResumptionTokenException();
+            } catch (UnsupportedEncodingException e) {
+                throw new BadResumptionTokenException();
+            }
+        }
+
+        void bind(PreparedStatement stmt, int index) throws SQLException {
+            if (key instanceof Long)
+                stmt.setLong(index, ((Long)key).longValue());
+            else
+                stmt.setString(index, (String)key);
+        }
+
+        String toToken() throws UnsupportedEncodingException {
+            StringBuffer sb = new StringBuffer();
+            sb.append('k');
+            sb.append(cursor);
+            sb.append('~');
+            if (key instanceof Long) {
+                sb.append('n');
+                sb.append(key);
+            } else {
+                sb.append('s');
+                sb.append(URLEncoder.encode((String)key, "UTF-8"));
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Forward-only cursor over the result of a compiled query, executed with
+     * a pooled prepared statement, or of a query whose values were
+     * substituted into the SQL text.
+     */
+    private class QueryCursor {
+        protected final Connection con;
+        private CompiledQuery      query;
+        private Statement          stmt;
+        protected ResultSet        rs;
+        private boolean            closed;
+
+        QueryCursor(Connection con) {
+            this.con = con;
+        }
+
+        QueryCursor(Connection con, CompiledQuery query, String oaiIdentifier) throws SQLException {
+            this(con);
+            try {
+                bindIdentifierQuery(prepare(query), query, oaiIdentifier);
+                executePrepared();
+            } catch (SQLException e) {
+                close();
+                throw e;
+            }
+        }
+
+        QueryCursor(Connection con, String sql) throws SQLException {
+            this(con);
+            execute(sql, 0);
+        }
+
+        protected PreparedStatement prepare(CompiledQuery query) throws SQLException {
+            PreparedStatement pstmt = prepareStatement(con, query);
+            this.query = query;
+            this.stmt = pstmt;
+            return pstmt;
+        }
+
+        protected void executePrepared() throws SQLException {
+            rs = ((PreparedStatement)stmt).executeQuery();
+        }
+
+        protected void execute(String sql, int fetchSize) throws SQLException {
+            stmt = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            try {
+                if (fetchSize > 0) stmt.setFetchSize(fetchSize);
+                rs = stmt.executeQuery(sql);
+            } catch (SQLException e) {
+                close();
+                throw e;
+            }
+        }
+
+        boolean next() throws SQLException {
+            return rs.next();
+        }
+
+        /**
+         * @return a new HashMap with the columns of the current row
+         */
+        HashMap readColumnValues() throws SQLException {
+            return getColumnValues(rs);
+        }
+
+        void close() {
+            if (closed) return;
+            closed = true;
+            if (rs != null) {
+                try {
+                    rs.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+            if (query != null) {
+                releaseStatement(con, query, (PreparedStatement)stmt);
+            } else if (stmt != null) {
+                try {
+                    stmt.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Forward-only cursor over one page of a range query. The first page, and
+     * every page when no keyset query is configured, is read with the offset
+     * based range query. Later pages of a keyset listing seek past the last
+     * returned key instead.
+     */
+    private class RangeCursor extends QueryCursor {
+        private final HashMap nativeItem = new HashMap();
+        private ColumnReader  reader;
+        private Object        lastKey;
+
+        RangeCursor(Connection con, String from, String until, String set, int offset, KeysetPosition position) throws SQLException, OAIInternalServerError {
+            super(con);
+            boolean noSet = set == null || set.length() == 0;
+            CompiledQuery query;
+            if (position != null)
+                query = noSet ? keysetRangeQuery : keysetRangeSetQuery;
+            else
+                query = noSet ? compiledRangeQuery : compiledRangeSetQuery;
+            if (query != null) {
+                try {
+                    PreparedStatement pstmt = prepare(query);
+                    pstmt.setFetchSize(maxListSize + 1);
+                    bindRangeQuery(pstmt, query, from, until, set, offset, maxListSize, position);
+                    executePrepared();
+                } catch (SQLException e) {
+                    close();
+                    throw e;
+                }
+            } else {
+                execute(populateRangeQuery(from, until, set, offset, maxListSize), maxListSize + 1);
+            }
+        }
+
+        /**
+         * @return the nativeItem for the current row, overwritten by the next
+         *         call
+         */
+        HashMap read() throws SQLException {
+            if (reader == null) reader = new ColumnReader(rs);
+            HashMap coreResult = reader.read(rs);
+            nativeItem.clear();
+            if (keyLabel != null) lastKey = coreResult.get(keyLabel);
+            nativeItem.put("coreResult", coreResult);
+            return nativeItem;
+        }
+
+        /**
+         * @return the cursor part of the resumptionToken after count records
+         *         were read from this page
+         */
+        String getResumptionCursor(int count) throws UnsupportedEncodingException {
+            if (keyLabel == null || lastKey == null) return Integer.toString(count);
+            return new KeysetPosition(count, lastKey).toToken();
+        }
+    }
+
     /**
      * insert actual from, until, and set parameters into the rangeQuery String
      * NOTE! This retrieves an extra record so we can decide if EOF has been
@@ -395,6 +932,20 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
         return sb.toString();
     }
 
+    /**
+     * Run the identifierQuery for the oaiIdentifier
+     * 
+     * @param con
+     *            the connection returned by startConnection()
+     * @param oaiIdentifier
+     *            the OAI identifier
+     * @return a QueryCursor positioned before the first row
+     */
+    private QueryCursor openIdentifierQuery(Connection con, String oaiIdentifier) throws SQLException, OAIInternalServerError {
+        if (compiledIdentifierQuery != null) return new QueryCursor(con, compiledIdentifierQuery, oaiIdentifier);
+        return new QueryCursor(con, populateIdentifierQuery(oaiIdentifier));
+    }
+
     /**
      * insert actual from, until, and set parameters into the identifierQuery
      * String
@@ -548,11 +1099,12 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
         ArrayList identifiers = new ArrayList();
         Connection con = null;
 
+        RangeCursor rs = null;
+
         try {
             con = startConnection();
             /* Get some records from your database */
-            Statement stmt = con.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
-            ResultSet rs = stmt.executeQuery(populateRangeQuery(from, until, set, 0, maxListSize));
+            rs = new RangeCursor(con, from, until, set, 0, null);
             //          rs.last();
             //          int numRows = rs.getRow();
             //          rs.beforeFirst();
@@ -560,8 +1112,7 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
 
             /* load the headers and identifiers ArrayLists. */
             for (count = 0; count < maxListSize && rs.next(); ++count) {
-                HashMap nativeItem = new HashMap();
-                nativeItem.put("coreResult", getColumnValues(rs));
+                HashMap nativeItem = rs.read();
                 /*
                  * Use the RecordFactory to extract header/identifier pairs for
                  * each item
@@ -574,6 +1125,7 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
             }
 
             if (count == 0) {
+                rs.close();
                 endConnection(con);
                 throw new NoItemsMatchException();
             }
@@ -599,7 +1151,7 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
                 else
                     resumptionTokenSb.append(URLEncoder.encode(set, "UTF-8"));
                 resumptionTokenSb.append("!");
-                resumptionTokenSb.append(Integer.toString(count));
+                resumptionTokenSb.append(rs.getResumptionCursor(count));
                 resumptionTokenSb.append("!");
                 resumptionTokenSb.append(metadataPrefix);
 
@@ -611,13 +1163,16 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
                 listIdentifiersMap.put("resumptionMap", getResumptionMap(resumptionTokenSb.toString(), -1, 0));
                 //          listIdentifiersMap.put("resumptionMap",
                 //                                 getResumptionMap(resumptionTokenSb.toString()));
-                endConnection(con);
             }
+            rs.close();
+            endConnection(con);
         } catch (SQLException e) {
+            if (rs != null) rs.close();
             if (con != null) endConnection(con);
             e.printStackTrace();
             throw new OAIInternalServerError(e.getMessage());
         } catch (UnsupportedEncodingException e) {
+            if (rs != null) rs.close();
             if (con != null) endConnection(con);
             e.printStackTrace();
             throw new OAIInternalServerError(e.getMessage());
@@ -658,6 +1213,7 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
         String until;
         String set;
         int oldCount;
+        KeysetPosition position = null;
         String metadataPrefix;
         //      int numRows;
         try {
@@ -666,7 +1222,13 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
             until = tokenizer.nextToken();
             set = tokenizer.nextToken();
             if (set.equals(".")) set = null;
-            oldCount = Integer.parseInt(tokenizer.nextToken());
+            String cursor = tokenizer.nextToken();
+            if (cursor.startsWith("k") && keyLabel != null) {
+                position = KeysetPosition.parse(cursor);
+                oldCount = position.cursor;
+            } else {
+                oldCount = Integer.parseInt(cursor);
+            }
             //          numRows = Integer.parseInt(tokenizer.nextToken());
             metadataPrefix = tokenizer.nextToken();
             if (debug) {
@@ -677,17 +1239,16 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
         }
 
         Connection con = null;
+        RangeCursor rs = null;
         try {
             con = startConnection();
             /* Get some more records from your database */
-            Statement stmt = con.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
-            ResultSet rs = stmt.executeQuery(populateRangeQuery(from, until, set, oldCount, maxListSize));
+            rs = new RangeCursor(con, from, until, set, oldCount, position);
             int count;
 
             /* load the headers and identifiers ArrayLists. */
             for (count = 0; count < maxListSize && rs.next(); ++count) {
-                HashMap nativeItem = new HashMap();
-                nativeItem.put("coreResult", getColumnValues(rs));
+                HashMap nativeItem = rs.read();
                 /*
                  * Use the RecordFactory to extract header/identifier pairs for
                  * each item
@@ -716,7 +1277,7 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
                 else
                     resumptionTokenSb.append(URLEncoder.encode(set, "UTF-8"));
                 resumptionTokenSb.append("!");
-                resumptionTokenSb.append(Integer.toString(oldCount + count));
+                resumptionTokenSb.append(rs.getResumptionCursor(oldCount + count));
                 resumptionTokenSb.append("!");
                 resumptionTokenSb.append(metadataPrefix);
 
@@ -728,13 +1289,16 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
                 listIdentifiersMap.put("resumptionMap", getResumptionMap(resumptionTokenSb.toString(), -1, oldCount));
                 //          listIdentifiersMap.put("resumptionMap",
                 //                                 getResumptionMap(resumptionTokenSb.toString()));
-                endConnection(con);
             }
+            rs.close();
+            endConnection(con);
         } catch (UnsupportedEncodingException e) {
+            if (rs != null) rs.close();
             if (con != null) endConnection(con);
             e.printStackTrace();
             throw new OAIInternalServerError(e.getMessage());
         } catch (SQLException e) {
+            if (rs != null) rs.close();
             if (con != null) endConnection(con);
             e.printStackTrace();
             throw new OAIInternalServerError(e.getMessage());
@@ -763,20 +1327,23 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
     @Override
     public String getRecord(String oaiIdentifier, String metadataPrefix) throws OAIInternalServerError, CannotDisseminateFormatException, IdDoesNotExistException {
         Connection con = null;
+        QueryCursor rs = null;
         try {
             con = startConnection();
-            Statement stmt = con.createStatement();
-            ResultSet rs = stmt.executeQuery(populateIdentifierQuery(oaiIdentifier));
+            rs = openIdentifierQuery(con, oaiIdentifier);
             if (!rs.next()) {
+                rs.close();
                 endConnection(con);
                 throw new IdDoesNotExistException(oaiIdentifier);
             }
             HashMap nativeItem = new HashMap();
-            nativeItem.put("coreResult", getColumnValues(rs));
+            nativeItem.put("coreResult", rs.readColumnValues());
+            rs.close();
             extendItem(con, nativeItem);
             endConnection(con);
             return constructRecord(nativeItem, metadataPrefix);
         } catch (SQLException e) {
+            if (rs != null) rs.close();
             if (con != null) endConnection(con);
             e.printStackTrace();
             throw new OAIInternalServerError(e.getMessage());
@@ -817,11 +1384,12 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
         ArrayList records = new ArrayList();
         Connection con = null;
 
+        RangeCursor rs = null;
+
         try {
             con = startConnection();
             /* Get some records from your database */
-            Statement stmt = con.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
-            ResultSet rs = stmt.executeQuery(populateRangeQuery(from, until, set, 0, maxListSize));
+            rs = new RangeCursor(con, from, until, set, 0, null);
             //          rs.last();
             //          int numRows = rs.getRow();
             //          rs.beforeFirst();
@@ -831,14 +1399,14 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
 
             /* load the records ArrayList */
             for (count = 0; count < maxListSize && rs.next(); ++count) {
-                HashMap nativeItem = new HashMap();
-                nativeItem.put("coreResult", getColumnValues(rs));
+                HashMap nativeItem = rs.read();
                 extendItem(con, nativeItem);
                 String record = constructRecord(nativeItem, metadataPrefix);
                 records.add(record);
             }
 
             if (count == 0) {
+                rs.close();
                 endConnection(con);
                 throw new NoItemsMatchException();
             }
@@ -864,7 +1432,7 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
                 else
                     resumptionTokenSb.append(URLEncoder.encode(set, "UTF-8"));
                 resumptionTokenSb.append("!");
-                resumptionTokenSb.append(Integer.toString(count));
+                resumptionTokenSb.append(rs.getResumptionCursor(count));
                 resumptionTokenSb.append("!");
                 //              resumptionTokenSb.append(Integer.toString(numRows));
                 //              resumptionTokenSb.append("!");
@@ -878,13 +1446,16 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
                 listRecordsMap.put("resumptionMap", getResumptionMap(resumptionTokenSb.toString(), -1, 0));
                 //          listRecordsMap.put("resumptionMap",
                 //                                 getResumptionMap(resumptionTokenSbSb.toString()));
-                endConnection(con);
             }
+            rs.close();
+            endConnection(con);
         } catch (UnsupportedEncodingException e) {
+            if (rs != null) rs.close();
             if (con != null) endConnection(con);
             e.printStackTrace();
             throw new OAIInternalServerError(e.getMessage());
         } catch (SQLException e) {
+            if (rs != null) rs.close();
             if (con != null) endConnection(con);
             e.printStackTrace();
             throw new OAIInternalServerError(e.getMessage());
@@ -924,6 +1495,7 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
         String until;
         String set;
         int oldCount;
+        KeysetPosition position = null;
         //      int numRows;
         String metadataPrefix;
         try {
@@ -932,7 +1504,13 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
             until = tokenizer.nextToken();
             set = tokenizer.nextToken();
             if (set.equals(".")) set = null;
-            oldCount = Integer.parseInt(tokenizer.nextToken());
+            String cursor = tokenizer.nextToken();
+            if (cursor.startsWith("k") && keyLabel != null) {
+                position = KeysetPosition.parse(cursor);
+                oldCount = position.cursor;
+            } else {
+                oldCount = Integer.parseInt(cursor);
+            }
             //          numRows = Integer.parseInt(tokenizer.nextToken());
             metadataPrefix = tokenizer.nextToken();
         } catch (NoSuchElementException e) {
@@ -940,24 +1518,24 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
         }
 
         Connection con = null;
+        RangeCursor rs = null;
         try {
             con = startConnection();
             /* Get some more records from your database */
-            Statement stmt = con.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
-            ResultSet rs = stmt.executeQuery(populateRangeQuery(from, until, set, oldCount, maxListSize));
+            rs = new RangeCursor(con, from, until, set, oldCount, position);
 
             int count;
 
             /* load the headers and identifiers ArrayLists. */
             for (count = 0; count < maxListSize && rs.next(); ++count) {
                 try {
-                    HashMap nativeItem = new HashMap();
-                    nativeItem.put("coreResult", getColumnValues(rs));
+                    HashMap nativeItem = rs.read();
                     extendItem(con, nativeItem);
                     String record = constructRecord(nativeItem, metadataPrefix);
                     records.add(record);
                 } catch (CannotDisseminateFormatException e) {
                     /* the client hacked the resumptionToken beyond repair */
+                    rs.close();
                     endConnection(con);
                     throw new BadResumptionTokenException();
                 }
@@ -981,7 +1559,7 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
                 else
                     resumptionTokenSb.append(URLEncoder.encode(set, "UTF-8"));
                 resumptionTokenSb.append("!");
-                resumptionTokenSb.append(Integer.toString(oldCount + count));
+                resumptionTokenSb.append(rs.getResumptionCursor(oldCount + count));
                 resumptionTokenSb.append("!");
                 //              resumptionTokenSb.append(Integer.toString(numRows));
                 //              resumptionTokenSb.append("!");
@@ -995,13 +1573,16 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
                 listRecordsMap.put("resumptionMap", getResumptionMap(resumptionTokenSb.toString(), -1, oldCount));
                 //          listRecordsMap.put("resumptionMap",
                 //                                 getResumptionMap(resumptionTokenSb.toString()));
-                endConnection(con);
             }
+            rs.close();
+            endConnection(con);
         } catch (UnsupportedEncodingException e) {
+            if (rs != null) rs.close();
             if (con != null) endConnection(con);
             e.printStackTrace();
             throw new OAIInternalServerError(e.getMessage());
         } catch (SQLException e) {
+            if (rs != null) rs.close();
             if (con != null) endConnection(con);
             e.printStackTrace();
             throw new OAIInternalServerError(e.getMessage());
@@ -1213,22 +1794,27 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
      */
     private Iterator getSetSpecs(HashMap nativeItem) throws OAIInternalServerError {
         Connection con = null;
+        QueryCursor rs = null;
         try {
             ArrayList setSpecs = new ArrayList();
             if (setSpecQuery != null) {
                 con = startConnection();
                 RecordFactory rf = getRecordFactory();
                 String oaiIdentifier = rf.getOAIIdentifier(nativeItem);
-                Statement stmt = con.createStatement();
-                ResultSet rs = stmt.executeQuery(populateSetSpecQuery(oaiIdentifier));
+                if (compiledSetSpecQuery != null)
+                    rs = new QueryCursor(con, compiledSetSpecQuery, oaiIdentifier);
+                else
+                    rs = new QueryCursor(con, populateSetSpecQuery(oaiIdentifier));
                 while (rs.next()) {
-                    HashMap setMap = getColumnValues(rs);
+                    HashMap setMap = rs.readColumnValues();
                     setSpecs.add(setMap.get(setSpecItemLabel).toString());
                 }
+                rs.close();
                 endConnection(con);
             }
             return setSpecs.iterator();
         } catch (SQLException e) {
+            if (rs != null) rs.close();
             if (con != null) endConnection(con);
             e.printStackTrace();
             throw new OAIInternalServerError(e.getMessage());
@@ -1245,22 +1831,27 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
      */
     private Iterator getAbouts(HashMap nativeItem) throws OAIInternalServerError {
         Connection con = null;
+        QueryCursor rs = null;
         try {
             ArrayList abouts = new ArrayList();
             if (aboutQuery != null) {
                 con = startConnection();
                 RecordFactory rf = getRecordFactory();
                 String oaiIdentifier = rf.getOAIIdentifier(nativeItem);
-                Statement stmt = con.createStatement();
-                ResultSet rs = stmt.executeQuery(populateAboutQuery(oaiIdentifier));
+                if (compiledAboutQuery != null)
+                    rs = new QueryCursor(con, compiledAboutQuery, oaiIdentifier);
+                else
+                    rs = new QueryCursor(con, populateAboutQuery(oaiIdentifier));
                 while (rs.next()) {
-                    HashMap aboutMap = getColumnValues(rs);
+                    HashMap aboutMap = rs.readColumnValues();
                     abouts.add(aboutMap.get(aboutValueLabel));
                 }
+                rs.close();
                 endConnection(con);
             }
             return abouts.iterator();
         } catch (SQLException e) {
+            if (rs != null) rs.close();
             if (con != null) endConnection(con);
             e.printStackTrace();
             throw new OAIInternalServerError(e.getMessage());
@@ -1348,6 +1939,19 @@ public class ExtendedJDBCOAICatalog extends AbstractCatalog {
      * close the repository
      */
     public void close() {
+        synchronized (preparedStatements) {
+            for (Object o : preparedStatements.values()) {
+                for (Object stmt : (LinkedList)o) {
+                    try {
+                        ((PreparedStatement)stmt).close();
+                    } catch (SQLException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+            preparedStatements.clear();
+            preparedConnection = null;
+        }
         try {
             if (persistentConnection != null) persistentConnection.close();
         } catch (SQLException e) {
@@ -19,6 +19,7 @@ import org.joda.time.format.DateTimeParser;
 import org.motechproject.commons.api.Range;
 import org.motechproject.commons.date.model.Time;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
 import java.time.LocalDateTime;
@@ -39,6 +40,9 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 import static org.apache.commons.lang.StringUtils.replaceEach;
 import static org.apache.commons.lang.StringUtils.split;
@@ -55,6 +59,10 @@ public final class TypeHelper {
     private static final Map<String, Class<?>> PRIMITIVE_WRAPPER_NAME_MAP;
     private static final Map<String, Set<String>> MAP_SUPPORTED_TYPES;
     private static final Map<String, Class<? extends Collection>> COLLECTION_IMPLEMENTATIONS;
+    // classes loaded by the class loader of this class
+    private static final Map<String, Class<?>> CLASS_CACHE = new ConcurrentHashMap<>();
+    // classes loaded by the other class loaders, these must not be kept alive by the cache
+    private static final Map<ClassLoader, Map<String, WeakReference<Class<?>>>> LOADER_CLASS_CACHE = new WeakHashMap<>();
 
     static {
         DateTimeParser[] parsers = {
@@ -192,26 +200,23 @@ public final class TypeHelper {
      * @return parsed value, and instance of the given class
      */
     public static Object parse(Object val, String toClass, String genericType, ClassLoader classLoader) {
+        return getConverter(toClass, genericType, classLoader).convert(val);
+    }
+
+    /**
+     * Returns a converter doing what {@link #parse(Object, String, String, ClassLoader)} does for the given class.
+     * The classes are resolved only once, so it should be used when many values are parsed to the same type,
+     * for example to parse the values of one field during an import.
+     *
+     * @param toClass fully qualified class name
+     * @param genericType fully qualified class name of a generic type, may be null
+     * @param classLoader class loader to use, in case of a failure to find class of name {@code toClass}
+     * @return converter to the given class
+     */
+    public static Converter getConverter(String toClass, String genericType, ClassLoader classLoader) {
         Class<?> generic = null != genericType ? getClassDefinition(genericType, classLoader) : null;
         Class<?> toClassDefinition = getClassDefinition(toClass, classLoader);
-
-        if (null == val) {
-            return null;
-        } else if (toClassDefinition.isAssignableFrom(val.getClass())) {
-            return parseAssignableType(val, toClassDefinition, generic);
-        } else if (val instanceof String) {
-            return parseString((String) val, toClassDefinition, generic);
-        } else if (val instanceof Integer && Boolean.class.getName().equals(toClass)) {
-            return parseIntToBool((Integer) val);
-        } else if (bothNumbers(val, toClass)) {
-            return parseNumber(val, toClass);
-        } else if (bothDateOrTime(val, toClass)) {
-            return parseDateToDate(val, toClass);
-        } else if (PRIMITIVE_WRAPPER_NAME_MAP.containsKey(toClassDefinition)) {
-            return parsePrimitive(val, toClassDefinition);
-        } else {
-            throw unableToParseException(val, toClass);
-        }
+        return new Converter(toClass, toClassDefinition, generic);
     }
 
     /**
@@ -310,22 +315,13 @@ public final class TypeHelper {
         }
 
         if (null != generic && generic.isEnum()) {
-            String[] stringArray = breakString(str);
             Class<? extends Enum> enumClass = (Class<? extends Enum>) generic;
-
-            for (String string : stringArray) {
-                collection.add(Enum.valueOf(enumClass, string));
-            }
+            forEachElement(str, false, string -> collection.add(Enum.valueOf(enumClass, string)));
         } else if (null != generic) {
-            String[] stringArray = breakStringForCollection(str);
-            for (String strItem : stringArray) {
-                collection.add(parse(strItem, generic));
-            }
+            Converter converter = getConverter(generic.getName(), null, null);
+            forEachElement(str, true, strItem -> collection.add(converter.convert(strItem)));
         } else {
-            String[] stringArray = breakStringForCollection(str);
-            for (String element : stringArray) {
-                collection.add(element.trim().replaceAll("%20", " "));
-            }
+            forEachElement(str, true, element -> collection.add(StringUtils.replace(element.trim(), "%20", " ")));
         }
 
         return collection;
@@ -336,23 +332,92 @@ public final class TypeHelper {
     }
 
     public static String[] breakString(String str) {
-        return breakString(
-                str,
-                new String[]{"[", "]", "{", "}", "\"", " "},
-                new String[]{"=", "\n", "\r\n"},
-                new String[]{":", ",", ","},
-                ","
-        );
+        return collectElements(str, false);
     }
 
     public static String[] breakStringForCollection(String str) {
-        return breakString(
-                str,
-                new String[]{"[", "]", "{", "}", "\""},
-                new String[]{"=", "\n", "\r\n", ", "},
-                new String[]{":", ",", ",", ","},
-                ","
-        );
+        return collectElements(str, true);
+    }
+
+    private static String[] collectElements(String str, boolean forCollection) {
+        if (null == str) {
+            return null;
+        }
+        List<String> elements = new ArrayList<>();
+        forEachElement(str, forCollection, elements::add);
+        return elements.toArray(new String[elements.size()]);
+    }
+
+    /**
+     * Splits the given text in one pass, the same way {@link #breakString(String, String[], String[], String[], String)}
+     * does with the arrays used by {@link #breakString(String)} (or {@link #breakStringForCollection(String)},
+     * if {@code forCollection} is true): brackets, braces and quotes (and spaces, if not for collection) are removed,
+     * '=' becomes ':', new lines (and ", " for collection) separate the elements like commas do, empty elements are skipped.
+     *
+     * @param str text to split, null has no elements
+     * @param forCollection true to split like {@link #breakStringForCollection(String)}
+     * @param consumer receives the elements
+     */
+    private static void forEachElement(CharSequence str, boolean forCollection, Consumer<String> consumer) {
+        if (null == str) {
+            return;
+        }
+
+        StringBuilder element = new StringBuilder();
+        boolean afterComma = false;
+        boolean afterCarriageReturn = false;
+
+        for (int i = 0; i < str.length(); ++i) {
+            char c = str.charAt(i);
+            if (c == '[' || c == ']' || c == '{' || c == '}' || c == '"' || (c == ' ' && !forCollection)) {
+                continue;
+            }
+            if (afterCarriageReturn) {
+                afterCarriageReturn = false;
+                if (c == '\n') {
+                    endElement(element, consumer);
+                    continue;
+                }
+                element.append('\r');
+            }
+            if (afterComma) {
+                afterComma = false;
+                if (c == ' ') {
+                    continue;
+                }
+            }
+
+            switch (c) {
+                case '\r':
+                    afterCarriageReturn = true;
+                    break;
+                case '\n':
+                    endElement(element, consumer);
+                    break;
+                case ',':
+                    endElement(element, consumer);
+                    afterComma = forCollection;
+                    break;
+                case '=':
+                    element.append(':');
+                    break;
+                default:
+                    element.append(c);
+                    break;
+            }
+        }
+
+        if (afterCarriageReturn) {
+            element.append('\r');
+        }
+        endElement(element, consumer);
+    }
+
+    private static void endElement(StringBuilder element, Consumer<String> consumer) {
+        if (element.length() > 0) {
+            consumer.accept(element.toString());
+            element.setLength(0);
+        }
     }
 
     public static String[] breakString(String str, String[] removes, String[] search,
@@ -402,18 +467,13 @@ public final class TypeHelper {
      * @return Map, parsed from the given String
      */
     public static Map parseStringToMap(String keyClass, String valueClass, String str) {
-        String[] entries = breakStringForCollection(str);
         Map map = new LinkedHashMap<>();
 
-        if (entries != null) {
-            for (String entry : entries) {
-                if (!entry.isEmpty()) {
-                    String[] values = split(entry, ":", 2);
-                    String val = (values.length > 1) ? values[1].trim() : "";
-                    map.put(parseMapValue(values[0].trim(), keyClass, true), parseMapValue(val, valueClass, false));
-                }
-            }
-        }
+        forEachElement(str, true, entry -> {
+            String[] values = split(entry, ":", 2);
+            String val = (values.length > 1) ? values[1].trim() : "";
+            map.put(parseMapValue(values[0].trim(), keyClass, true), parseMapValue(val, valueClass, false));
+        });
 
         return map;
     }
@@ -937,43 +997,157 @@ public final class TypeHelper {
         return "org.motechproject.mds.domain.MdsVersionedEntity".equalsIgnoreCase(entitySuperClass);
     }
 
-    private static boolean bothNumbers(Object val, String toClass) {
-        return val instanceof Number && Number.class.isAssignableFrom(getClassDefinition(toClass));
-    }
-
-    private static boolean bothDateOrTime(Object val, String toClass) {
-        return isDateOrTime(val.getClass()) && isDateOrTime(getClassDefinition(toClass));
-    }
-
     private static Class getClassDefinition(String clazz) {
         return getClassDefinition(clazz, null);
     }
 
     @SuppressWarnings("PMD.PreserveStackTrace")
     private static Class getClassDefinition(String clazz, ClassLoader classLoader) {
-        Class<?> definition;
+        Class<?> definition = PRIMITIVE_WRAPPER_NAME_MAP.get(clazz);
+        if (null == definition) {
+            definition = CLASS_CACHE.get(clazz);
+        }
+        if (null != definition) {
+            return definition;
+        }
+
+        ClassLoader safeClassLoader = null == classLoader
+                ? MDSClassLoader.getInstance()
+                : classLoader;
+        // classes which were not found by our class loader before, don't try it again
+        definition = getCachedClass(safeClassLoader, clazz);
+        if (null != definition) {
+            return definition;
+        }
 
         try {
-            if (PRIMITIVE_WRAPPER_NAME_MAP.containsKey(clazz)) {
-                definition = PRIMITIVE_WRAPPER_NAME_MAP.get(clazz);
-            } else {
-                definition = TypeHelper.class.getClassLoader().loadClass(clazz);
-            }
+            definition = TypeHelper.class.getClassLoader().loadClass(clazz);
+            CLASS_CACHE.put(clazz, definition);
         } catch (ClassNotFoundException e1) {
-            ClassLoader safeClassLoader = null == classLoader
-                    ? MDSClassLoader.getInstance()
-                    : classLoader;
-
             try {
                 definition = safeClassLoader.loadClass(clazz);
             } catch (ClassNotFoundException e2) {
                 throw new IllegalArgumentException("Unable to load class " + clazz, e2);
             }
+            cacheClass(safeClassLoader, clazz, definition);
         }
 
         return definition;
     }
 
+    private static Class<?> getCachedClass(ClassLoader classLoader, String clazz) {
+        synchronized (LOADER_CLASS_CACHE) {
+            Map<String, WeakReference<Class<?>>> classes = LOADER_CLASS_CACHE.get(classLoader);
+            WeakReference<Class<?>> reference = null == classes ? null : classes.get(clazz);
+            return null == reference ? null : reference.get();
+        }
+    }
+
+    private static void cacheClass(ClassLoader classLoader, String clazz, Class<?> definition) {
+        synchronized (LOADER_CLASS_CACHE) {
+            Map<String, WeakReference<Class<?>>> classes = LOADER_CLASS_CACHE.get(classLoader);
+            if (null == classes) {
+                classes = new HashMap<>();
+                LOADER_CLASS_CACHE.put(classLoader, classes);
+            }
+            classes.put(clazz, new WeakReference<Class<?>>(definition));
+        }
+    }
+
+    /**
+     * Parses values to one class, see {@link TypeHelper#getConverter(String, String, ClassLoader)}.
+     * The way a value is parsed is decided by the class of the value, the decision for the last class
+     * is kept, since the values of one field usually are of the same class.
+     */
+    public static final class Converter {
+        private final String toClass;
+        private final Class<?> toClassDefinition;
+        private final Class<?> generic;
+        private final boolean toBoolean;
+        private final boolean toNumber;
+        private final boolean toDateOrTime;
+        private final boolean toPrimitive;
+        private volatile Dispatch lastDispatch;
+
+        private Converter(String toClass, Class<?> toClassDefinition, Class<?> generic) {
+            this.toClass = toClass;
+            this.toClassDefinition = toClassDefinition;
+            this.generic = generic;
+            this.toBoolean = Boolean.class.getName().equals(toClass);
+            this.toNumber = Number.class.isAssignableFrom(toClassDefinition);
+            this.toDateOrTime = isDateOrTime(toClassDefinition);
+            this.toPrimitive = PRIMITIVE_WRAPPER_NAME_MAP.containsKey(toClassDefinition);
+        }
+
+        /**
+         * Attempts to parse given value to an instance of the class of this converter.
+         * Throws {@link java.lang.IllegalArgumentException} if it is unable to parse the value.
+         *
+         * @param val value to parse
+         * @return parsed value, and instance of the class of this converter
+         */
+        public Object convert(Object val) {
+            if (null == val) {
+                return null;
+            }
+
+            Dispatch dispatch = lastDispatch;
+            if (null == dispatch || dispatch.valueClass != val.getClass()) {
+                dispatch = new Dispatch(val.getClass(), getConversion(val));
+                lastDispatch = dispatch;
+            }
+
+            switch (dispatch.conversion) {
+                case ASSIGNABLE:
+                    return parseAssignableType(val, toClassDefinition, generic);
+                case STRING:
+                    return parseString((String) val, toClassDefinition, generic);
+                case INT_TO_BOOL:
+                    return parseIntToBool((Integer) val);
+                case NUMBER:
+                    return parseNumber(val, toClass);
+                case DATE_OR_TIME:
+                    return parseDateToDate(val, toClass);
+                case PRIMITIVE:
+                    return parsePrimitive(val, toClassDefinition);
+                default:
+                    throw unableToParseException(val, toClass);
+            }
+        }
+
+        private Conversion getConversion(Object val) {
+            if (toClassDefinition.isAssignableFrom(val.getClass())) {
+                return Conversion.ASSIGNABLE;
+            } else if (val instanceof String) {
+                return Conversion.STRING;
+            } else if (val instanceof Integer && toBoolean) {
+                return Conversion.INT_TO_BOOL;
+            } else if (val instanceof Number && toNumber) {
+                return Conversion.NUMBER;
+            } else if (toDateOrTime && isDateOrTime(val.getClass())) {
+                return Conversion.DATE_OR_TIME;
+            } else if (toPrimitive) {
+                return Conversion.PRIMITIVE;
+            } else {
+                return Conversion.NONE;
+            }
+        }
+    }
+
+    private enum Conversion {
+        ASSIGNABLE, STRING, INT_TO_BOOL, NUMBER, DATE_OR_TIME, PRIMITIVE, NONE
+    }
+
+    private static final class Dispatch {
+        private final Class<?> valueClass;
+        private final Conversion conversion;
+
+        private Dispatch(Class<?> valueClass, Conversion conversion) {
+            this.valueClass = valueClass;
+            this.conversion = conversion;
+        }
+    }
+
     private static IllegalArgumentException unableToParseException(Object val, Class toClass) {
         return unableToParseException(val, toClass.getName());
     }
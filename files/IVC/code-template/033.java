@@ -42,6 +42,7 @@ import javax.media.jai.RasterFormatTag;
 import javax.media.jai.RenderedOp;
 import javax.media.jai.operator.CropDescriptor;
 import javax.media.jai.operator.ScaleDescriptor;
+import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.image.ComponentSampleModel;
@@ -52,7 +53,17 @@ import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -70,7 +81,9 @@ import java.util.Vector;
  * <ol>
  * <li>Search an N x N window around an estimated pixel position using the geo-coding of the source product (if any) or</li>
  * <li>perform a quad-tree search if the source product has no geo-coding.</li>
- * </ol></p>
+ * </ol>
+ * If the system property <code>beam.pixelGeoCoding.useInverseIndex</code> is set to <code>true</code>, both are
+ * replaced by a lookup in a lat/lon bucket grid which is computed once for the whole scene.</p>
  * <p/>
  * <p><i>Use instances of this class with care: The constructor fully loads the data given by the latitudes and longitudes bands and
  * the valid mask (if any) into memory.</i></p>
@@ -106,8 +119,13 @@ public class PixelGeoCoding extends AbstractGeoCoding {
      * @since BEAM 4.9
      */
     private static final String SYSPROP_PIXEL_GEO_CODING_FRACTION_ACCURACY = "beam.pixelGeoCoding.fractionAccuracy";
+    /**
+     * @since BEAM 4.11
+     */
+    private static final String SYSPROP_PIXEL_GEO_CODING_USE_INVERSE_INDEX = "beam.pixelGeoCoding.useInverseIndex";
 
     private static final int MAX_SEARCH_CYCLES = 10;
+    private static final int GAP_FILLING_ROWS_PER_TASK = 64;
 
     // TODO - (nf) make EPS for quad-tree search dependent on current scene
     private static final float EPS = 0.04F; // used by quad-tree search
@@ -123,13 +141,16 @@ public class PixelGeoCoding extends AbstractGeoCoding {
     private final int rasterHeight;
     private final boolean useTiling;
     private final boolean fractionAccuracy;
+    private final boolean useInverseIndex;
     private GeoCoding pixelPosEstimator;
     private final boolean estimatorCreatedInternally;
+    private EstimatorPool estimatorPool;
     private PixelGrid latGrid;
     private PixelGrid lonGrid;
-    private boolean initialized;
+    private volatile boolean initialized;
     private LatLonImage latLonImage;
     private double deltaThreshold;
+    private volatile InverseIndex inverseIndex;
 
     /**
      * Constructs a new pixel-based geo-coding.
@@ -176,6 +197,8 @@ public class PixelGeoCoding extends AbstractGeoCoding {
         // fraction accuracy is only implemented in tiling mode (because tiling mode will be the default soon)
         fractionAccuracy = useTiling && Boolean.getBoolean(SYSPROP_PIXEL_GEO_CODING_FRACTION_ACCURACY);
 
+        useInverseIndex = Boolean.getBoolean(SYSPROP_PIXEL_GEO_CODING_USE_INVERSE_INDEX);
+
         pixelPosEstimator = latBand.getProduct().getGeoCoding();
 
         final int subSampling = 30;
@@ -229,6 +252,7 @@ public class PixelGeoCoding extends AbstractGeoCoding {
                 throw new IllegalArgumentException("searchRadius < 2");
             }
             crossingMeridianAt180 = pixelPosEstimator.isCrossingMeridianAt180();
+            estimatorPool = new EstimatorPool(pixelPosEstimator);
             GeoPos p0 = pixelPosEstimator.getGeoPos(new PixelPos(0.5f, 0.5f), null);
             GeoPos p1 = pixelPosEstimator.getGeoPos(new PixelPos(1.5f, 0.5f), null);
 
@@ -274,7 +298,7 @@ public class PixelGeoCoding extends AbstractGeoCoding {
                 validMask = ImageManager.getInstance().getMaskImage(validMaskExpr, latBand.getProduct());
             }
             latLonImage = new LatLonImage(this.latBand.getGeophysicalImage(), this.lonBand.getGeophysicalImage(),
-                                          validMask, pixelPosEstimator);
+                                          validMask, estimatorPool);
         } else {
             try {
                 pm.beginTask("Preparing data for pixel based geo-coding...", 4);
@@ -299,7 +323,8 @@ public class PixelGeoCoding extends AbstractGeoCoding {
      * {@link IndexValidator#validateIndex(int) validator.validateIndex(pixelIndex)} returns false.</p>
      * <p/>
      * <p>The default implementation uses the underlying {@link #getPixelPosEstimator() estimator} (if any)
-     * to find default values for the gaps.</p>
+     * to find default values for the gaps. The rows are filled in parallel stripes. Each stripe uses its own
+     * copy of a tie-point geo-coding estimator; calls to any other estimator are serialized.</p>
      *
      * @param validator the pixel validator, never null
      * @param latElems  the latitude data buffer in row-major order
@@ -310,29 +335,136 @@ public class PixelGeoCoding extends AbstractGeoCoding {
                                    final float[] latElems,
                                    final float[] lonElems, ProgressMonitor pm) {
         if (pixelPosEstimator != null) {
+            final int stripeCount = (rasterHeight + GAP_FILLING_ROWS_PER_TASK - 1) / GAP_FILLING_ROWS_PER_TASK;
+            final List<Future<Integer>> futures = new ArrayList<Future<Integer>>(stripeCount);
             try {
                 pm.beginTask("Filling invalid pixel gaps", rasterHeight);
-                final PixelPos pixelPos = new PixelPos();
-                GeoPos geoPos = new GeoPos();
-                for (int y = 0; y < rasterHeight; y++) {
-                    for (int x = 0; x < rasterWidth; x++) {
-                        int i = y * rasterWidth + x;
-                        if (!validator.validateIndex(i)) {
-                            pixelPos.x = x;
-                            pixelPos.y = y;
-                            geoPos = pixelPosEstimator.getGeoPos(pixelPos, geoPos);
-                            latElems[i] = geoPos.lat;
-                            lonElems[i] = geoPos.lon;
+                for (int y = 0; y < rasterHeight; y += GAP_FILLING_ROWS_PER_TASK) {
+                    final int y1 = y;
+                    final int y2 = Math.min(y + GAP_FILLING_ROWS_PER_TASK, rasterHeight);
+                    futures.add(GapFillingExecutor.INSTANCE.submit(new Callable<Integer>() {
+                        @Override
+                        public Integer call() {
+                            fillInvalidGaps(validator, latElems, lonElems, y1, y2);
+                            return y2 - y1;
                         }
-                    }
-                    pm.worked(1);
+                    }));
+                }
+                for (Future<Integer> future : futures) {
+                    pm.worked(future.get());
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Filling of invalid pixel gaps has been interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Unable to fill invalid pixel gaps", e.getCause());
             } finally {
+                for (Future<Integer> future : futures) {
+                    future.cancel(true);
+                }
                 pm.done();
             }
         }
     }
 
+    private void fillInvalidGaps(IndexValidator validator, float[] latElems, float[] lonElems, int y1, int y2) {
+        final GeoCoding estimator = estimatorPool.acquire();
+        try {
+            final PixelPos pixelPos = new PixelPos();
+            GeoPos geoPos = new GeoPos();
+            for (int y = y1; y < y2; y++) {
+                for (int x = 0; x < rasterWidth; x++) {
+                    int i = y * rasterWidth + x;
+                    if (!validator.validateIndex(i)) {
+                        pixelPos.x = x;
+                        pixelPos.y = y;
+                        geoPos = estimatorPool.getGeoPos(estimator, pixelPos, geoPos);
+                        latElems[i] = geoPos.lat;
+                        lonElems[i] = geoPos.lon;
+                    }
+                }
+            }
+        } finally {
+            estimatorPool.release(estimator);
+        }
+    }
+
+    /**
+     * Lazily created pool of daemon threads shared by all pixel geo-codings for filling invalid pixel gaps.
+     */
+    private static final class GapFillingExecutor {
+
+        private static final ExecutorService INSTANCE =
+                Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                    private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        final Thread thread = new Thread(r, "PixelGeoCoding-gap-filler-" + threadNumber.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * Hands out the pixel position estimator to concurrent workers. A {@link TiePointGeoCoding} is copied, so
+     * that every worker uses an instance of its own. Other geo-codings are not known to be thread-safe, so they
+     * are shared and calls to them are serialized.
+     */
+    private static final class EstimatorPool {
+
+        private final GeoCoding estimator;
+        private final ConcurrentLinkedQueue<GeoCoding> idleCopies;
+
+        private EstimatorPool(GeoCoding estimator) {
+            this.estimator = estimator;
+            if (estimator.getClass() == TiePointGeoCoding.class) {
+                idleCopies = new ConcurrentLinkedQueue<GeoCoding>();
+            } else {
+                idleCopies = null;
+            }
+        }
+
+        private GeoCoding acquire() {
+            if (idleCopies == null) {
+                return estimator;
+            }
+            GeoCoding copy = idleCopies.poll();
+            if (copy == null) {
+                final TiePointGeoCoding tiePointGeoCoding = (TiePointGeoCoding) estimator;
+                copy = new TiePointGeoCoding(tiePointGeoCoding.getLatGrid().cloneTiePointGrid(),
+                                             tiePointGeoCoding.getLonGrid().cloneTiePointGrid(),
+                                             tiePointGeoCoding.getDatum());
+            }
+            return copy;
+        }
+
+        private void release(GeoCoding acquired) {
+            if (idleCopies != null) {
+                idleCopies.offer(acquired);
+            }
+        }
+
+        private GeoPos getGeoPos(GeoCoding acquired, PixelPos pixelPos, GeoPos geoPos) {
+            if (idleCopies != null) {
+                return acquired.getGeoPos(pixelPos, geoPos);
+            }
+            synchronized (estimator) {
+                return estimator.getGeoPos(pixelPos, geoPos);
+            }
+        }
+
+        private void dispose() {
+            if (idleCopies != null) {
+                GeoCoding copy;
+                while ((copy = idleCopies.poll()) != null) {
+                    copy.dispose();
+                }
+            }
+        }
+    }
+
     /**
      * Computes an estimation of the memory required to create an instance of this class for the given product.
      * The estimation is returned in bytes.
@@ -457,7 +589,9 @@ public class PixelGeoCoding extends AbstractGeoCoding {
             pixelPos = new PixelPos();
         }
         if (geoPos.isValid()) {
-            if (pixelPosEstimator != null) {
+            if (useInverseIndex) {
+                getPixelPosUsingInverseIndex(geoPos, pixelPos);
+            } else if (pixelPosEstimator != null) {
                 getPixelPosUsingEstimator(geoPos, pixelPos);
             } else {
                 getPixelPosUsingQuadTreeSearch(geoPos, pixelPos);
@@ -476,10 +610,13 @@ public class PixelGeoCoding extends AbstractGeoCoding {
      */
     public void getPixelPosUsingEstimator(final GeoPos geoPos, PixelPos pixelPos) {
         initialize();
+        getPixelPosUsingEstimator(geoPos, pixelPos, null, new Result());
+    }
 
+    private void getPixelPosUsingEstimator(GeoPos geoPos, PixelPos pixelPos, SearchWindow window, Result result) {
         pixelPos = pixelPosEstimator.getPixelPos(geoPos, pixelPos);
         if (!pixelPos.isValid()) {
-            getPixelPosUsingQuadTreeSearch(geoPos, pixelPos);
+            getPixelPosUsingQuadTreeSearch(geoPos, pixelPos, result);
             return;
         }
         final int x0 = (int) Math.floor(pixelPos.x);
@@ -496,7 +633,7 @@ public class PixelGeoCoding extends AbstractGeoCoding {
             do {
                 x1 = (int) Math.floor(pixelPos.x);
                 y1 = (int) Math.floor(pixelPos.y);
-                minDelta = findBestPixel(x1, y1, lat0, lon0, pixelPos);
+                minDelta = findBestPixel(x1, y1, lat0, lon0, pixelPos, window);
             }
             while (++cycles < MAX_SEARCH_CYCLES && (x1 != (int) pixelPos.x || y1 != (int) pixelPos.y) && bestPixelIsOnSearchBorder(
                     x1, y1, pixelPos));
@@ -514,7 +651,7 @@ public class PixelGeoCoding extends AbstractGeoCoding {
         return diffX > (searchRadius - 2) || diffY > (searchRadius - 2);
     }
 
-    private float findBestPixel(int x0, int y0, float lat0, float lon0, PixelPos bestPixel) {
+    private float findBestPixel(int x0, int y0, float lat0, float lon0, PixelPos bestPixel, SearchWindow window) {
         int x1 = x0 - searchRadius;
         int y1 = y0 - searchRadius;
         int x2 = x0 + searchRadius;
@@ -527,7 +664,7 @@ public class PixelGeoCoding extends AbstractGeoCoding {
 
         if (useTiling) {
             Rectangle rect = new Rectangle(x1, y1, x2 - x1 + 1, y2 - y1 + 1);
-            Raster latLonData = latLonImage.getData(rect);
+            Raster latLonData = window != null ? window.getData(rect) : latLonImage.getData(rect);
             ComponentSampleModel sampleModel = (ComponentSampleModel) latLonData.getSampleModel();
             DataBufferFloat dataBuffer = (DataBufferFloat) latLonData.getDataBuffer();
             float[][] bankData = dataBuffer.getBankData();
@@ -606,8 +743,11 @@ public class PixelGeoCoding extends AbstractGeoCoding {
      */
     public void getPixelPosUsingQuadTreeSearch(final GeoPos geoPos, PixelPos pixelPos) {
         initialize();
+        getPixelPosUsingQuadTreeSearch(geoPos, pixelPos, new Result());
+    }
 
-        final Result result = new Result();
+    private void getPixelPosUsingQuadTreeSearch(GeoPos geoPos, PixelPos pixelPos, Result result) {
+        result.reset();
         boolean pixelFound = quadTreeSearch(0,
                                             geoPos.lat, geoPos.lon,
                                             0, 0,
@@ -622,14 +762,90 @@ public class PixelGeoCoding extends AbstractGeoCoding {
         }
     }
 
-    private synchronized void initialize() {
+    /**
+     * Returns the pixel co-ordinates as x/y for a given geographical position given as lat/lon.
+     * This algorithm looks up the pixel nearest to the given position in a lat/lon bucket grid,
+     * which is computed on first use.
+     *
+     * @param geoPos   the geographical position as lat/lon.
+     * @param pixelPos the retun value
+     */
+    public void getPixelPosUsingInverseIndex(final GeoPos geoPos, PixelPos pixelPos) {
+        initialize();
+        getPixelPosUsingInverseIndex(getInverseIndex(), geoPos, pixelPos, new Result());
+    }
+
+    private static void getPixelPosUsingInverseIndex(InverseIndex index, GeoPos geoPos, PixelPos pixelPos,
+                                                     Result result) {
+        result.reset();
+        if (index.findNearest(geoPos.lat, geoPos.lon, result)) {
+            pixelPos.setLocation(result.x + 0.5f, result.y + 0.5f);
+        } else {
+            pixelPos.setInvalid();
+        }
+    }
+
+    private InverseIndex getInverseIndex() {
+        InverseIndex index = inverseIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = inverseIndex;
+                if (index == null) {
+                    final float[] lats = new float[rasterWidth * rasterHeight];
+                    final float[] lons = new float[rasterWidth * rasterHeight];
+                    readLatLon(lats, lons);
+                    index = new InverseIndex(lats, lons, rasterWidth, rasterHeight, isCrossingMeridianAt180());
+                    inverseIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Copies the (gap filled) latitudes and longitudes of all pixels into the given buffers in row-major order.
+     */
+    private void readLatLon(final float[] lats, final float[] lons) {
+        if (useTiling) {
+            final Rectangle bounds = latLonImage.getBounds();
+            float[] line = new float[latLonImage.getTileWidth()];
+            // let the tile scheduler compute all (gap filled) tiles concurrently
+            final Point[] tileIndices = latLonImage.getTileIndices(bounds);
+            final Raster[] tiles = latLonImage.getTiles(tileIndices);
+            for (final Raster tile : tiles) {
+                final Rectangle rect = tile.getBounds().intersection(bounds);
+                if (rect.isEmpty()) {
+                    continue;
+                }
+                if (line.length < rect.width) {
+                    line = new float[rect.width];
+                }
+                for (int y = rect.y; y < rect.y + rect.height; y++) {
+                    final int i = (y - bounds.y) * rasterWidth + (rect.x - bounds.x);
+                    tile.getSamples(rect.x, y, rect.width, 1, 0, line);
+                    System.arraycopy(line, 0, lats, i, rect.width);
+                    tile.getSamples(rect.x, y, rect.width, 1, 1, line);
+                    System.arraycopy(line, 0, lons, i, rect.width);
+                }
+            }
+        } else {
+            System.arraycopy(latGrid.getRasterData().getElems(), 0, lats, 0, lats.length);
+            System.arraycopy(lonGrid.getRasterData().getElems(), 0, lons, 0, lons.length);
+        }
+    }
+
+    private void initialize() {
         if (!initialized) {
-            try {
-                initData(latBand, lonBand, validMaskExpression, ProgressMonitor.NULL);
-            } catch (IOException e) {
-                throw new IllegalStateException("Unable to initialse data for pixel geo-coding", e);
+            synchronized (this) {
+                if (!initialized) {
+                    try {
+                        initData(latBand, lonBand, validMaskExpression, ProgressMonitor.NULL);
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Unable to initialse data for pixel geo-coding", e);
+                    }
+                    initialized = true;
+                }
             }
-            initialized = true;
         }
     }
 
@@ -677,6 +893,139 @@ public class PixelGeoCoding extends AbstractGeoCoding {
         return geoPos;
     }
 
+    /**
+     * Returns the latitudes and longitudes of the given pixels. Pixels outside of the scene raster are
+     * geo-located by the pixel position estimator at their centre, or set to <code>NaN</code> if there is no
+     * estimator.
+     *
+     * @param x      the pixel x co-ordinates
+     * @param y      the pixel y co-ordinates
+     * @param latOut receives the latitudes, must be at least as long as <code>x</code>
+     * @param lonOut receives the longitudes, must be at least as long as <code>x</code>
+     * @since BEAM 4.11
+     */
+    public void getGeoPos(final int[] x, final int[] y, final float[] latOut, final float[] lonOut) {
+        initialize();
+        final GeoCoding estimator = pixelPosEstimator;
+        final PixelPos pixelPos = new PixelPos();
+        GeoPos geoPos = new GeoPos();
+        if (useTiling) {
+            final int minX = latLonImage.getMinX();
+            final int minY = latLonImage.getMinY();
+            Raster tile = null;
+            int tileX1 = 0;
+            int tileY1 = 0;
+            int tileX2 = -1;
+            int tileY2 = -1;
+            for (int k = 0; k < x.length; k++) {
+                final int x0 = x[k];
+                final int y0 = y[k];
+                if (x0 >= 0 && x0 < rasterWidth && y0 >= 0 && y0 < rasterHeight) {
+                    final int imageX = minX + x0;
+                    final int imageY = minY + y0;
+                    if (imageX < tileX1 || imageX > tileX2 || imageY < tileY1 || imageY > tileY2) {
+                        tile = latLonImage.getTile(latLonImage.XToTileX(imageX), latLonImage.YToTileY(imageY));
+                        tileX1 = tile.getMinX();
+                        tileY1 = tile.getMinY();
+                        tileX2 = tileX1 + tile.getWidth() - 1;
+                        tileY2 = tileY1 + tile.getHeight() - 1;
+                    }
+                    latOut[k] = tile.getSampleFloat(imageX, imageY, 0);
+                    lonOut[k] = tile.getSampleFloat(imageX, imageY, 1);
+                } else {
+                    geoPos = getGeoPosUsingEstimator(estimator, x0, y0, pixelPos, geoPos);
+                    latOut[k] = geoPos.lat;
+                    lonOut[k] = geoPos.lon;
+                }
+            }
+        } else {
+            final float[] latArray = (float[]) latGrid.getRasterData().getElems();
+            final float[] lonArray = (float[]) lonGrid.getRasterData().getElems();
+            for (int k = 0; k < x.length; k++) {
+                final int x0 = x[k];
+                final int y0 = y[k];
+                if (x0 >= 0 && x0 < rasterWidth && y0 >= 0 && y0 < rasterHeight) {
+                    final int i = rasterWidth * y0 + x0;
+                    latOut[k] = latArray[i];
+                    lonOut[k] = lonArray[i];
+                } else {
+                    geoPos = getGeoPosUsingEstimator(estimator, x0, y0, pixelPos, geoPos);
+                    latOut[k] = geoPos.lat;
+                    lonOut[k] = geoPos.lon;
+                }
+            }
+        }
+    }
+
+    private static GeoPos getGeoPosUsingEstimator(GeoCoding estimator, int x, int y, PixelPos pixelPos,
+                                                  GeoPos geoPos) {
+        if (estimator == null) {
+            geoPos.setInvalid();
+            return geoPos;
+        }
+        pixelPos.setLocation(x + 0.5f, y + 0.5f);
+        return estimator.getGeoPos(pixelPos, geoPos);
+    }
+
+    /**
+     * Returns the pixel co-ordinates for the given latitudes and longitudes. Co-ordinates of positions
+     * which cannot be located are set to <code>NaN</code>.
+     *
+     * @param lat  the latitudes
+     * @param lon  the longitudes
+     * @param xOut receives the pixel x co-ordinates, must be at least as long as <code>lat</code>
+     * @param yOut receives the pixel y co-ordinates, must be at least as long as <code>lat</code>
+     * @since BEAM 4.11
+     */
+    public void getPixelPos(final float[] lat, final float[] lon, final float[] xOut, final float[] yOut) {
+        initialize();
+        final GeoPos geoPos = new GeoPos();
+        final PixelPos pixelPos = new PixelPos();
+        final Result result = new Result();
+        final InverseIndex index = useInverseIndex ? getInverseIndex() : null;
+        final boolean useEstimator = pixelPosEstimator != null;
+        final SearchWindow window = useTiling ? new SearchWindow() : null;
+        for (int k = 0; k < lat.length; k++) {
+            geoPos.setLocation(lat[k], lon[k]);
+            if (!geoPos.isValid()) {
+                pixelPos.setInvalid();
+            } else if (index != null) {
+                getPixelPosUsingInverseIndex(index, geoPos, pixelPos, result);
+            } else if (useEstimator) {
+                getPixelPosUsingEstimator(geoPos, pixelPos, window, result);
+            } else {
+                getPixelPosUsingQuadTreeSearch(geoPos, pixelPos, result);
+            }
+            if (pixelPos.isValid()) {
+                xOut[k] = pixelPos.x;
+                yOut[k] = pixelPos.y;
+            } else {
+                xOut[k] = Float.NaN;
+                yOut[k] = Float.NaN;
+            }
+        }
+    }
+
+    /**
+     * Keeps the lat/lon data around the last searched pixel, so that a batch of nearby positions does not
+     * request a new raster from the lat/lon image for every position.
+     */
+    private final class SearchWindow {
+
+        private Raster data;
+
+        private Raster getData(Rectangle rect) {
+            if (data == null || !data.getBounds().contains(rect)) {
+                final int marginX = latLonImage.getTileWidth() / 2;
+                final int marginY = latLonImage.getTileHeight() / 2;
+                final Rectangle bounds = new Rectangle(rect.x - marginX, rect.y - marginY,
+                                                       rect.width + 2 * marginX, rect.height + 2 * marginY);
+                data = latLonImage.getData(bounds.intersection(latLonImage.getBounds()));
+            }
+            return data;
+        }
+    }
+
     private float interpolate(float wx, float wy, Raster raster, int band) {
         final int x0 = raster.getMinX();
         final int x1 = x0 + 1;
@@ -748,6 +1097,11 @@ public class PixelGeoCoding extends AbstractGeoCoding {
             latLonImage.dispose();
             latLonImage = null;
         }
+        inverseIndex = null;
+        if (estimatorPool != null) {
+            estimatorPool.dispose();
+            estimatorPool = null;
+        }
         // Don't dispose the estimator, if it is not our's!
         if (estimatorCreatedInternally) {
             pixelPosEstimator.dispose();
@@ -1200,6 +1554,10 @@ public class PixelGeoCoding extends AbstractGeoCoding {
             delta = INVALID;
         }
 
+        private void reset() {
+            delta = INVALID;
+        }
+
         public final boolean update(final int x, final int y, final float delta) {
             final boolean b = delta < this.delta;
             if (b) {
@@ -1216,6 +1574,172 @@ public class PixelGeoCoding extends AbstractGeoCoding {
         }
     }
 
+    /**
+     * A regular lat/lon bucket grid over all pixels of a scene. The pixel indexes are stored bucket by bucket
+     * in a single array, so that a lookup only visits the pixels of the 3 x 3 buckets around a position.
+     * If the scene crosses the 180 degree meridian, negative longitudes are shifted by 360 degrees, so that
+     * the longitude range covered by the grid is contiguous.
+     */
+    private static final class InverseIndex {
+
+        private static final int SAMPLE_COUNT = 64;
+
+        private final int width;
+        private final boolean shiftLon;
+        private final float[] lats;
+        private final float[] lons;
+        private float latMin;
+        private float lonMin;
+        private float cellLat;
+        private float cellLon;
+        private int numLat;
+        private int numLon;
+        private final int[] bucketStart;
+        private final int[] bucketPixels;
+
+        private InverseIndex(final float[] lats, final float[] lons, final int width, final int height,
+                             final boolean shiftLon) {
+            this.width = width;
+            this.shiftLon = shiftLon;
+            this.lats = lats;
+            this.lons = lons;
+
+            final int pixelCount = width * height;
+            latMin = Float.POSITIVE_INFINITY;
+            lonMin = Float.POSITIVE_INFINITY;
+            float latMax = Float.NEGATIVE_INFINITY;
+            float lonMax = Float.NEGATIVE_INFINITY;
+            for (int i = 0; i < pixelCount; i++) {
+                final float lat = lats[i];
+                float lon = lons[i];
+                if (Float.isNaN(lat) || Float.isNaN(lon)) {
+                    continue;
+                }
+                if (shiftLon && lon < 0.0f) {
+                    lon += 360.0f;
+                    lons[i] = lon;
+                }
+                latMin = min(latMin, lat);
+                latMax = max(latMax, lat);
+                lonMin = min(lonMin, lon);
+                lonMax = max(lonMax, lon);
+            }
+            if (latMin > latMax) {
+                // no valid pixel at all
+                latMin = lonMin = 0.0f;
+                cellLat = cellLon = 1.0f;
+                numLat = numLon = 1;
+                bucketStart = new int[2];
+                bucketPixels = new int[0];
+                return;
+            }
+
+            // the bucket size is derived from the mean distance between neighbouring pixels
+            final int stepX = Math.max(1, width / SAMPLE_COUNT);
+            final int stepY = Math.max(1, height / SAMPLE_COUNT);
+            double sumLat = 0.0;
+            double sumLon = 0.0;
+            int count = 0;
+            for (int y = 0; y < height - 1; y += stepY) {
+                for (int x = 0; x < width - 1; x += stepX) {
+                    final int i = y * width + x;
+                    final float dLat = Math.abs(lats[i + 1] - lats[i]) + Math.abs(lats[i + width] - lats[i]);
+                    final float dLon = Math.abs(lons[i + 1] - lons[i]) + Math.abs(lons[i + width] - lons[i]);
+                    if (!Float.isNaN(dLat) && !Float.isNaN(dLon) && dLon < 180.0f) {
+                        sumLat += dLat;
+                        sumLon += dLon;
+                        count++;
+                    }
+                }
+            }
+            cellLat = count > 0 ? Math.max((float) (1.5 * sumLat / count), 1.0e-6F) : latMax - latMin + 1.0f;
+            cellLon = count > 0 ? Math.max((float) (1.5 * sumLon / count), 1.0e-6F) : lonMax - lonMin + 1.0f;
+            setGridSize(latMax, lonMax);
+            while ((long) numLat * numLon > pixelCount) {
+                final float f = (float) Math.sqrt((double) numLat * numLon / pixelCount) * 1.01f;
+                cellLat *= f;
+                cellLon *= f;
+                setGridSize(latMax, lonMax);
+            }
+
+            final int bucketCount = numLat * numLon;
+            final int[] pixelBuckets = new int[pixelCount];
+            bucketStart = new int[bucketCount + 1];
+            for (int i = 0; i < pixelCount; i++) {
+                final float lat = lats[i];
+                final float lon = lons[i];
+                if (Float.isNaN(lat) || Float.isNaN(lon)) {
+                    pixelBuckets[i] = -1;
+                } else {
+                    final int b = getCellY(lat) * numLon + getCellX(lon);
+                    pixelBuckets[i] = b;
+                    bucketStart[b + 1]++;
+                }
+            }
+            for (int b = 0; b < bucketCount; b++) {
+                bucketStart[b + 1] += bucketStart[b];
+            }
+            bucketPixels = new int[bucketStart[bucketCount]];
+            final int[] fill = new int[bucketCount];
+            System.arraycopy(bucketStart, 0, fill, 0, bucketCount);
+            for (int i = 0; i < pixelCount; i++) {
+                final int b = pixelBuckets[i];
+                if (b >= 0) {
+                    bucketPixels[fill[b]++] = i;
+                }
+            }
+        }
+
+        private void setGridSize(float latMax, float lonMax) {
+            numLat = (int) ((latMax - latMin) / cellLat) + 1;
+            numLon = (int) ((lonMax - lonMin) / cellLon) + 1;
+        }
+
+        private int getCellY(float lat) {
+            return Math.min((int) ((lat - latMin) / cellLat), numLat - 1);
+        }
+
+        private int getCellX(float lon) {
+            return Math.min((int) ((lon - lonMin) / cellLon), numLon - 1);
+        }
+
+        /**
+         * Finds the pixel nearest to the given position among the pixels not more than about one bucket away.
+         *
+         * @return <code>true</code>, if such a pixel was found
+         */
+        private boolean findNearest(final float lat, float lon, final Result result) {
+            if (shiftLon && lon < 0.0f) {
+                lon += 360.0f;
+            }
+            final int cy = (int) Math.floor((lat - latMin) / cellLat);
+            final int cx = (int) Math.floor((lon - lonMin) / cellLon);
+            if (cy < -1 || cy > numLat || cx < -1 || cx > numLon) {
+                return false;
+            }
+            final float r = (float) Math.cos(lat * D2R);
+            final float maxDelta = sqr(cellLat, r * cellLon);
+            final int y1 = Math.max(cy - 1, 0);
+            final int y2 = Math.min(cy + 1, numLat - 1);
+            final int x1 = Math.max(cx - 1, 0);
+            final int x2 = Math.min(cx + 1, numLon - 1);
+            boolean pixelFound = false;
+            for (int by = y1; by <= y2; by++) {
+                for (int bx = x1; bx <= x2; bx++) {
+                    final int b = by * numLon + bx;
+                    for (int k = bucketStart[b]; k < bucketStart[b + 1]; k++) {
+                        final int i = bucketPixels[k];
+                        final float delta = sqr(lat - lats[i], r * (lon - lons[i]));
+                        if (delta <= maxDelta && result.update(i % width, i / width, delta)) {
+                            pixelFound = true;
+                        }
+                    }
+                }
+            }
+            return pixelFound;
+        }
+    }
+
     /**
      * Gets the datum, the reference point or surface against which {@link GeoPos} measurements are made.
      *
@@ -1232,7 +1756,7 @@ public class PixelGeoCoding extends AbstractGeoCoding {
 
     private static class LatLonImage extends PointOpImage {
 
-        private final GeoCoding estimator;
+        private final EstimatorPool estimators;
 
         private final RasterFormatTag latRasterFormatTag;
         private final RasterFormatTag lonRasterFormatTag;
@@ -1266,14 +1790,15 @@ public class PixelGeoCoding extends AbstractGeoCoding {
             return v;
         }
 
-        private LatLonImage(RenderedImage latSrc, RenderedImage lonSrc, RenderedImage validSrc, GeoCoding estimator) {
-            this(latSrc, lonSrc, validSrc, layout(latSrc), estimator);
+        private LatLonImage(RenderedImage latSrc, RenderedImage lonSrc, RenderedImage validSrc,
+                            EstimatorPool estimators) {
+            this(latSrc, lonSrc, validSrc, layout(latSrc), estimators);
         }
 
         private LatLonImage(RenderedImage latSrc, RenderedImage lonSrc, RenderedImage maskSrc, ImageLayout imageLayout,
-                            GeoCoding estimator) {
+                            EstimatorPool estimators) {
             super(vector(latSrc, lonSrc, maskSrc), imageLayout, renderingHints(imageLayout), true);
-            this.estimator = estimator;
+            this.estimators = estimators;
             latRasterFormatTag = getRasterFormatTag(latSrc.getSampleModel());
             lonRasterFormatTag = getRasterFormatTag(lonSrc.getSampleModel());
             if (maskSrc != null) {
@@ -1302,18 +1827,27 @@ public class PixelGeoCoding extends AbstractGeoCoding {
             }
             RasterAccessor destAcc = new RasterAccessor(dest, destRect, targetRasterFormatTag, getColorModel());
 
-            if (latAcc.getDataType() == DataBuffer.TYPE_DOUBLE) {
-                processDoubleLoop(latAcc, lonAcc, maskAcc, destAcc, destRect);
-            } else if (latAcc.getDataType() == DataBuffer.TYPE_FLOAT) {
-                processFloatLoop(latAcc, lonAcc, maskAcc, destAcc, destRect);
-            } else {
-                throw new IllegalStateException("unsupported data type: " + latAcc.getDataType());
+            // tiles are computed concurrently by the JAI tile scheduler, so each tile works with an estimator
+            // acquired for its own thread
+            final GeoCoding estimator = maskAcc != null ? estimators.acquire() : null;
+            try {
+                if (latAcc.getDataType() == DataBuffer.TYPE_DOUBLE) {
+                    processDoubleLoop(latAcc, lonAcc, maskAcc, destAcc, destRect, estimator);
+                } else if (latAcc.getDataType() == DataBuffer.TYPE_FLOAT) {
+                    processFloatLoop(latAcc, lonAcc, maskAcc, destAcc, destRect, estimator);
+                } else {
+                    throw new IllegalStateException("unsupported data type: " + latAcc.getDataType());
+                }
+            } finally {
+                if (estimator != null) {
+                    estimators.release(estimator);
+                }
             }
             destAcc.copyDataToRaster();
         }
 
         private void processDoubleLoop(RasterAccessor latAcc, RasterAccessor lonAcc, RasterAccessor maskAcc,
-                                       RasterAccessor destAcc, Rectangle destRect) {
+                                       RasterAccessor destAcc, Rectangle destRect, GeoCoding estimator) {
             int latLineStride = latAcc.getScanlineStride();
             int latPixelStride = latAcc.getPixelStride();
             int[] sLatBandOffsets = latAcc.getBandOffsets();
@@ -1377,7 +1911,7 @@ public class PixelGeoCoding extends AbstractGeoCoding {
                         int x0 = x + destRect.x;
                         int y0 = y + destRect.y;
                         pixelPos.setLocation(x0, y0);
-                        estimator.getGeoPos(pixelPos, geoPos);
+                        geoPos = estimators.getGeoPos(estimator, pixelPos, geoPos);
                         dLat[dLatPixelOffset] = geoPos.lat;
                         dLon[dLonPixelOffset] = geoPos.lon;
                     } else {
@@ -1395,7 +1929,7 @@ public class PixelGeoCoding extends AbstractGeoCoding {
         }
 
         private void processFloatLoop(RasterAccessor latAcc, RasterAccessor lonAcc, RasterAccessor maskAcc,
-                                      RasterAccessor destAcc, Rectangle destRect) {
+                                      RasterAccessor destAcc, Rectangle destRect, GeoCoding estimator) {
             int latLineStride = latAcc.getScanlineStride();
             int latPixelStride = latAcc.getPixelStride();
             int[] sLatBandOffsets = latAcc.getBandOffsets();
@@ -1459,7 +1993,7 @@ public class PixelGeoCoding extends AbstractGeoCoding {
                         int x0 = x + destRect.x;
                         int y0 = y + destRect.y;
                         pixelPos.setLocation(x0, y0);
-                        estimator.getGeoPos(pixelPos, geoPos);
+                        geoPos = estimators.getGeoPos(estimator, pixelPos, geoPos);
                         dLat[dLatPixelOffset] = geoPos.lat;
                         dLon[dLonPixelOffset] = geoPos.lon;
                     } else {
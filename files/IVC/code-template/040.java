@@ -27,6 +27,7 @@ import com.google.gwt.dev.jjs.ast.JCastOperation;
 import com.google.gwt.dev.jjs.ast.JCharLiteral;
 import com.google.gwt.dev.jjs.ast.JClassType;
 import com.google.gwt.dev.jjs.ast.JConditional;
+import com.google.gwt.dev.jjs.ast.JConstructor;
 import com.google.gwt.dev.jjs.ast.JContinueStatement;
 import com.google.gwt.dev.jjs.ast.JDeclarationStatement;
 import com.google.gwt.dev.jjs.ast.JDeclaredType;
@@ -79,12 +80,15 @@ import com.google.gwt.thirdparty.guava.common.collect.Sets;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Removes certain kinds of dead code, and simplifies certain expressions. This
@@ -105,6 +109,8 @@ public class DeadCodeElimination {
    * rule is in {@link #endVisit(JNewInstance, Context)}, where the target
    * constructor may be non-empty at the beginning of DCE and become empty
    * during the run, which potentially unlocks optimizations at call sites.
+   * {@link DeadCodeElimination#execUntilFixedPoint} revisits the methods affected by each run,
+   * which include those call sites.
    *
    * TODO: leverage ignoring expression output more to remove intermediary
    * operations in favor of pure side effects.
@@ -2015,6 +2021,25 @@ public class DeadCodeElimination {
 
   public static final String NAME = DeadCodeElimination.class.getSimpleName();
 
+  /**
+   * Whether {@link #exec(JProgram, OptimizerContext)} simplifies the affected methods on several
+   * threads, see {@link #execInParallel}.
+   */
+  private static final boolean PARALLEL =
+      Boolean.getBoolean("gwt.jjs.parallelDeadCodeElimination");
+
+  /**
+   * Fewest methods simplified by one task of the parallel mode.
+   */
+  private static final int MIN_METHODS_PER_TASK = 64;
+
+  /**
+   * Pool for the parallel mode, only created when that is enabled.
+   */
+  private static class PoolHolder {
+    private static final ForkJoinPool POOL = new ForkJoinPool();
+  }
+
   @VisibleForTesting
   public static OptimizerStats exec(JProgram program) {
     return new DeadCodeElimination(program).execImpl(Collections.singleton(program),
@@ -2034,7 +2059,41 @@ public class DeadCodeElimination {
    */
   public static OptimizerStats exec(JProgram program, OptimizerContext optimizerCtx) {
     Set<JMethod> affectedMethods = affectedMethods(optimizerCtx);
-    OptimizerStats stats = new DeadCodeElimination(program).execImpl(affectedMethods, optimizerCtx);
+    DeadCodeElimination deadCodeElimination = new DeadCodeElimination(program);
+    OptimizerStats stats = PARALLEL
+        ? deadCodeElimination.execInParallel(affectedMethods, optimizerCtx)
+        : deadCodeElimination.execImpl(affectedMethods, optimizerCtx);
+    optimizerCtx.setLastStepFor(NAME, optimizerCtx.getOptimizationStep());
+    optimizerCtx.incOptimizationStep();
+    JavaAstVerifier.assertProgramIsConsistent(program);
+    return stats;
+  }
+
+  /**
+   * Apply DeadCodeElimination on the set of newly modified methods (obtained from the optimizer
+   * context) until nothing changes anymore. Rather than running the whole pass again, each round
+   * only revisits the methods affected by the previous one: the methods it modified, their callers
+   * (e.g. of the constructors which became empty, see
+   * {@link DeadCodeVisitor#endVisit(JNewInstance, Context)}) and the readers of the fields it
+   * modified.
+   */
+  public static OptimizerStats execUntilFixedPoint(JProgram program,
+      OptimizerContext optimizerCtx) {
+    OptimizerStats stats = new OptimizerStats(NAME + " until fixed point");
+    DeadCodeElimination deadCodeElimination = new DeadCodeElimination(program);
+    Set<JMethod> worklist = affectedMethods(optimizerCtx, optimizerCtx.getLastStepFor(NAME));
+    while (!worklist.isEmpty()) {
+      // Modifications of this round are recorded at this step only
+      int roundStep = optimizerCtx.getOptimizationStep();
+      OptimizerStats roundStats = PARALLEL
+          ? deadCodeElimination.execInParallel(worklist, optimizerCtx)
+          : deadCodeElimination.execImpl(worklist, optimizerCtx);
+      stats.add(roundStats);
+      worklist = roundStats.didChange()
+          ? affectedMethods(optimizerCtx, roundStep)
+          : Collections.<JMethod>emptySet();
+      optimizerCtx.incOptimizationStep();
+    }
     optimizerCtx.setLastStepFor(NAME, optimizerCtx.getOptimizationStep());
     optimizerCtx.incOptimizationStep();
     JavaAstVerifier.assertProgramIsConsistent(program);
@@ -2046,13 +2105,20 @@ public class DeadCodeElimination {
    * given set functions.
    */
   private static Set<JMethod> affectedMethods(OptimizerContext optimizerCtx) {
-    Set<JMethod> modifiedMethods =
-        optimizerCtx.getModifiedMethodsSince(optimizerCtx.getLastStepFor(NAME));
+    return affectedMethods(optimizerCtx, optimizerCtx.getLastStepFor(NAME));
+  }
+
+  /**
+   * Return the methods modified since the given step, their callers and the methods referencing
+   * the fields modified since that step.
+   */
+  private static Set<JMethod> affectedMethods(OptimizerContext optimizerCtx, int stepSince) {
+    Set<JMethod> modifiedMethods = optimizerCtx.getModifiedMethodsSince(stepSince);
     Set<JMethod> affectedMethods = Sets.newLinkedHashSet();
     affectedMethods.addAll(modifiedMethods);
     affectedMethods.addAll(optimizerCtx.getCallers(modifiedMethods));
     affectedMethods.addAll(optimizerCtx.getMethodsByReferencedFields(
-        optimizerCtx.getModifiedFieldsSince(optimizerCtx.getLastStepFor(NAME))));
+        optimizerCtx.getModifiedFieldsSince(stepSince)));
     return affectedMethods;
   }
 
@@ -2089,5 +2155,130 @@ public class DeadCodeElimination {
     return stats;
   }
 
+  /**
+   * Does what {@link #execImpl} does for a set of methods, simplifying them on several threads.
+   *
+   * Methods are simplified independently of each other, except for what a method reads of other
+   * methods: a new operation whose result is ignored is removed when the target constructor is
+   * empty, and a reference to a final field is replaced by its constant initializer, which is in
+   * the declaration statement of the field in another method ($clinit or $init). So constructors
+   * and methods declaring fields are simplified one at a time, in order, and only the methods
+   * between two of those are simplified concurrently; the result is the same as simplifying the
+   * methods one after another. Each task has its own visitor and the tasks do not touch the
+   * optimizer context, the modified methods are marked afterwards, in order.
+   */
+  private OptimizerStats execInParallel(Collection<JMethod> methods,
+      OptimizerContext optimizerCtx) {
+    OptimizerStats stats = new OptimizerStats(NAME);
+    Event optimizeEvent = SpeedTracerLogger.start(CompilerEventType.OPTIMIZE, "optimizer", NAME);
+
+    JMethod[] orderedMethods = methods.toArray(new JMethod[methods.size()]);
+    boolean[] isBarrier = new boolean[orderedMethods.length];
+    for (int i = 0; i < orderedMethods.length; i++) {
+      isBarrier[i] = isReadByOtherMethods(orderedMethods[i]);
+    }
+    boolean[] modified = new boolean[orderedMethods.length];
+    int numMods = 0;
+    int start = 0;
+    while (start < orderedMethods.length) {
+      int end = start + 1;
+      if (!isBarrier[start]) {
+        while (end < orderedMethods.length && !isBarrier[end]) {
+          end++;
+        }
+      }
+      numMods += end - start < 2 * MIN_METHODS_PER_TASK
+          ? simplify(orderedMethods, start, end, modified)
+          : PoolHolder.POOL.invoke(new SimplifyTask(orderedMethods, start, end, modified));
+      start = end;
+    }
+
+    for (int i = 0; i < orderedMethods.length; i++) {
+      if (modified[i]) {
+        optimizerCtx.markModified(orderedMethods[i]);
+      }
+    }
+    stats.recordModified(numMods);
+    optimizeEvent.end("didChange", "" + stats.didChange());
+    return stats;
+  }
+
+  /**
+   * Whether simplifying the method can change how other methods are simplified: it is a
+   * constructor, or it declares fields whose initializers may be folded into constants.
+   */
+  private static boolean isReadByOtherMethods(JMethod method) {
+    if (method instanceof JConstructor) {
+      return true;
+    }
+    FieldDeclarationFinder finder = new FieldDeclarationFinder();
+    finder.accept(method);
+    return finder.found;
+  }
+
+  /**
+   * Finds the declaration statements of fields, which are not nested in expressions.
+   */
+  private static class FieldDeclarationFinder extends JVisitor {
+    private boolean found;
+
+    @Override
+    public boolean visit(JExpression x, Context ctx) {
+      return false;
+    }
+
+    @Override
+    public boolean visit(JDeclarationStatement x, Context ctx) {
+      found |= x.getVariableRef() instanceof JFieldRef;
+      return false;
+    }
+  }
+
+  /**
+   * Simplifies the methods in [from, to) with a visitor of their own, recording which of them
+   * changed.
+   *
+   * @return the number of modifications
+   */
+  private int simplify(JMethod[] methods, int from, int to, boolean[] modified) {
+    DeadCodeVisitor deadCodeVisitor =
+        new DeadCodeVisitor(OptimizerContext.NULL_OPTIMIZATION_CONTEXT);
+    for (int i = from; i < to; i++) {
+      int numModsBefore = deadCodeVisitor.getNumMods();
+      deadCodeVisitor.accept(methods[i]);
+      modified[i] = deadCodeVisitor.getNumMods() > numModsBefore;
+    }
+    return deadCodeVisitor.getNumMods();
+  }
+
+  /**
+   * Simplifies a range of methods, splitting it in halves until it is small enough.
+   */
+  private class SimplifyTask extends RecursiveTask<Integer> {
+    private final JMethod[] methods;
+    private final int from;
+    private final int to;
+    private final boolean[] modified;
+
+    SimplifyTask(JMethod[] methods, int from, int to, boolean[] modified) {
+      this.methods = methods;
+      this.from = from;
+      this.to = to;
+      this.modified = modified;
+    }
+
+    @Override
+    protected Integer compute() {
+      if (to - from < 2 * MIN_METHODS_PER_TASK) {
+        return simplify(methods, from, to, modified);
+      }
+      int middle = (from + to) >>> 1;
+      SimplifyTask first = new SimplifyTask(methods, from, middle, modified);
+      first.fork();
+      int numMods = new SimplifyTask(methods, middle, to, modified).compute();
+      return numMods + first.join();
+    }
+  }
+
   private enum AnalysisResult { TRUE, FALSE, UNKNOWN }
 }
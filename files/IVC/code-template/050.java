@@ -51,6 +51,8 @@ import java.io.FileNotFoundException;
 import java.io.PrintStream;
 import java.text.Collator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
 
 import org.apache.commons.codec.binary.Hex;
@@ -288,7 +290,14 @@ public static void cursorFillWindow(final Cursor cursor,
             window.clear();
             window.setStartPosition(position);
             window.setNumColumns(numColumns);
-            if (cursor.moveToPosition(position)) {
+            // rows which are already held by the cursor's own window are copied directly
+            if (cursor instanceof AbstractWindowedCursor) {
+                final CursorWindow source = ((AbstractWindowedCursor) cursor).getWindow();
+                if (source != null && source != window) {
+                    position = copyWindowRows(source, position, window, numColumns);
+                }
+            }
+            if (position >= 0 && position < cursor.getCount() && cursor.moveToPosition(position)) {
                 do {
                     if (!window.allocRow()) {
                         break;
@@ -340,6 +349,65 @@ public static void cursorFillWindow(final Cursor cursor,
         }
     }
 
+    /**
+     * Copies the rows of the source window starting at the given position into the target window,
+     * reading each cell by row and column instead of moving a cursor over the rows.
+     *
+     * @return the position of the first row which has not been copied, or -1 if the target window
+     *         is full
+     */
+    @DSComment("Private Method")
+    @DSBan(DSCat.PRIVATE_METHOD)
+    
+private static int copyWindowRows(final CursorWindow source, int position,
+            final CursorWindow window, final int numColumns) {
+        source.acquireReference();
+        try {
+            final int end = source.getStartPosition() + source.getNumRows();
+            if (position < source.getStartPosition() || position >= end
+                    || source.getNumColumns() != numColumns) {
+                return position;
+            }
+            for (; position < end; position++) {
+                if (!window.allocRow()) {
+                    return -1;
+                }
+                for (int i = 0; i < numColumns; i++) {
+                    final boolean success;
+                    switch (source.getType(position, i)) {
+                        case Cursor.FIELD_TYPE_NULL:
+                            success = window.putNull(position, i);
+                            break;
+
+                        case Cursor.FIELD_TYPE_INTEGER:
+                            success = window.putLong(source.getLong(position, i), position, i);
+                            break;
+
+                        case Cursor.FIELD_TYPE_FLOAT:
+                            success = window.putDouble(source.getDouble(position, i), position, i);
+                            break;
+
+                        case Cursor.FIELD_TYPE_BLOB:
+                            success = window.putBlob(source.getBlob(position, i), position, i);
+                            break;
+
+                        default:
+                        case Cursor.FIELD_TYPE_STRING:
+                            success = window.putString(source.getString(position, i), position, i);
+                            break;
+                    }
+                    if (!success) {
+                        window.freeLastRow();
+                        return -1;
+                    }
+                }
+            }
+            return position;
+        } finally {
+            source.releaseReference();
+        }
+    }
+
     /**
      * Appends an SQL string to the given StringBuilder, including the opening
      * and closing single quotes. Any single quotes internal to sqlString will
@@ -363,17 +431,15 @@ public static void cursorFillWindow(final Cursor cursor,
     
 public static void appendEscapedSQLString(StringBuilder sb, String sqlString) {
         sb.append('\'');
-        if (sqlString.indexOf('\'') != -1) {
-            int length = sqlString.length();
-            for (int i = 0; i < length; i++) {
-                char c = sqlString.charAt(i);
-                if (c == '\'') {
-                    sb.append('\'');
-                }
-                sb.append(c);
-            }
-        } else
-            sb.append(sqlString);
+        int start = 0;
+        int quote = sqlString.indexOf('\'');
+        while (quote != -1) {
+            // append up to and including the quote, then double it
+            sb.append(sqlString, start, quote + 1).append('\'');
+            start = quote + 1;
+            quote = sqlString.indexOf('\'', start);
+        }
+        sb.append(sqlString, start, sqlString.length());
         sb.append('\'');
     }
 
@@ -385,7 +451,7 @@ public static void appendEscapedSQLString(StringBuilder sb, String sqlString) {
     @DSGenerator(tool_name = "Doppelganger", tool_version = "2.0", generated_on = "2013-12-30 12:28:38.290 -0500", hash_original_method = "7552DB2CB2D2F1A34A98DAA2372BF735", hash_generated_method = "AF0FA82A7D6CD7394EBC331BCBC5D65F")
     
 public static String sqlEscapeString(String value) {
-        StringBuilder escaper = new StringBuilder();
+        StringBuilder escaper = new StringBuilder(value.length() + 2);
 
         DatabaseUtils.appendEscapedSQLString(escaper, value);
 
@@ -407,6 +473,10 @@ public static final void appendValueToSql(StringBuilder sql, Object value) {
             } else {
                 sql.append('0');
             }
+        } else if (value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte) {
+            // integral values never contain quotes
+            sql.append('\'').append(((Number) value).longValue()).append('\'');
         } else {
             appendEscapedSQLString(sql, value.toString());
         }
@@ -437,12 +507,7 @@ public static String concatenateWhere(String a, String b) {
     @DSGenerator(tool_name = "Doppelganger", tool_version = "2.0", generated_on = "2013-12-30 12:28:38.298 -0500", hash_original_method = "2277D1FB24406F696FA05FFD0730F1E8", hash_generated_method = "ADC942F1075E4624D53E8C7FC47A2431")
     
 public static String getCollationKey(String name) {
-        byte [] arr = getCollationKeyInBytes(name);
-        try {
-            return new String(arr, 0, getKeyLen(arr), "ISO8859_1");
-        } catch (Exception ex) {
-            return "";
-        }
+        return getCachedCollationKey(name).key;
     }
 
     /**
@@ -454,9 +519,50 @@ public static String getCollationKey(String name) {
     @DSGenerator(tool_name = "Doppelganger", tool_version = "2.0", generated_on = "2013-12-30 12:28:38.301 -0500", hash_original_method = "3EFAF0E286C0E5ABBA5F444CC372591A", hash_generated_method = "95EF173F526EFF87C03956708A63348D")
     
 public static String getHexCollationKey(String name) {
-        byte [] arr = getCollationKeyInBytes(name);
-        char[] keys = Hex.encodeHex(arr);
-        return new String(keys, 0, getKeyLen(arr) * 2);
+        return getCachedCollationKey(name).hexKey;
+    }
+
+    /**
+     * Returns the plain and hex collation keys of the given name, computing both
+     * once and caching them for the current collator locale.
+     */
+    @DSComment("Private Method")
+    @DSBan(DSCat.PRIVATE_METHOD)
+    
+private static CollationKeys getCachedCollationKey(String name) {
+        synchronized (sCollationKeyCache) {
+            final Locale locale = Locale.getDefault();
+            if (!locale.equals(sCollationLocale)) {
+                // the collator depends on the default locale
+                mColl = null;
+                sCollationLocale = locale;
+                sCollationKeyCache.clear();
+            }
+            CollationKeys keys = sCollationKeyCache.get(name);
+            if (keys == null) {
+                byte [] arr = getCollationKeyInBytes(name);
+                final int len = getKeyLen(arr);
+                String key;
+                try {
+                    key = new String(arr, 0, len, "ISO8859_1");
+                } catch (Exception ex) {
+                    key = "";
+                }
+                keys = new CollationKeys(key, new String(Hex.encodeHex(arr), 0, len * 2));
+                sCollationKeyCache.put(name, keys);
+            }
+            return keys;
+        }
+    }
+
+    private static final class CollationKeys {
+        final String key;
+        final String hexKey;
+
+        CollationKeys(String key, String hexKey) {
+            this.key = key;
+            this.hexKey = hexKey;
+        }
     }
 
     @DSComment("Private Method")
@@ -1599,6 +1705,19 @@ public void close() {
 @DSGeneratedField(tool_name = "Doppelganger", tool_version = "2.0", generated_on = "2013-12-30 12:28:38.308 -0500", hash_original_field = "30509007D4B85CC0C448607239B0E0D3", hash_generated_field = "64EC00AB4BE1B864318AEBC676ADD327")
 
     private static Collator mColl = null;
+
+    private static final int COLLATION_KEY_CACHE_SIZE = 512;
+
+    private static Locale sCollationLocale = null;
+
+    /** Recently used collation keys by name, guarded by itself; also guards {@link #mColl}. */
+    private static final Map<String, CollationKeys> sCollationKeyCache =
+            new LinkedHashMap<String, CollationKeys>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CollationKeys> eldest) {
+                    return size() > COLLATION_KEY_CACHE_SIZE;
+                }
+            };
     
     @DSSafe(DSCat.SAFE_OTHERS)
     @DSGenerator(tool_name = "Doppelganger", tool_version = "0.4.2", generated_on = "2013-07-17 10:23:07.928 -0400", hash_original_method = "333D4DF31C6A57BA4790D091F2223BA8", hash_generated_method = "333D4DF31C6A57BA4790D091F2223BA8")
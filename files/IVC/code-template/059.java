@@ -18,20 +18,30 @@ package com.android.server;
 
 import android.os.Build;
 import android.os.Process;
+import android.os.SystemClock;
+import android.util.ArrayMap;
 import android.util.Slog;
 
-import com.android.internal.util.ConcurrentUtils;
 import com.android.internal.util.Preconditions;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Thread pool used during initialization of system server.
  * <p>System services can {@link #submit(Runnable)} tasks for execution during boot.
+ * A task may name the descriptions of previously submitted tasks it depends on; it is
+ * started only once all of them have finished. Tasks run on a work-stealing pool sized to
+ * the number of cores.
  * The pool will be shut down after {@link SystemService#PHASE_BOOT_COMPLETED}.
  * New tasks <em>should not</em> be submitted afterwards.
  *
@@ -42,54 +52,252 @@ public class SystemServerInitThreadPool {
     private static final int SHUTDOWN_TIMEOUT_MILLIS = 20000;
     private static final boolean IS_DEBUGGABLE = Build.IS_DEBUGGABLE;
 
-    private static SystemServerInitThreadPool sInstance;
+    private static volatile SystemServerInitThreadPool sInstance;
 
-    private ExecutorService mService = ConcurrentUtils.newFixedThreadPool(4,
-            "system-server-init-thread", Process.THREAD_PRIORITY_FOREGROUND);
+    private volatile ForkJoinPool mService = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+            new InitThreadFactory(), null, false);
 
-    public static synchronized SystemServerInitThreadPool get() {
-        if (sInstance == null) {
-            sInstance = new SystemServerInitThreadPool();
+    private final Object mLock = new Object();
+    // Set once shutdown has started, new tasks are rejected from then on
+    private boolean mShuttingDown;
+    // All submitted tasks in submission order, and the latest task for each description.
+    private final ArrayList<InitTask> mTasks = new ArrayList<>();
+    private final ArrayMap<String, InitTask> mTasksByDescription = new ArrayMap<>();
+
+    public static SystemServerInitThreadPool get() {
+        SystemServerInitThreadPool instance = sInstance;
+        if (instance == null) {
+            synchronized (SystemServerInitThreadPool.class) {
+                instance = sInstance;
+                if (instance == null) {
+                    instance = sInstance = new SystemServerInitThreadPool();
+                }
+            }
         }
-        Preconditions.checkState(sInstance.mService != null, "Cannot get " + TAG
+        Preconditions.checkState(instance.mService != null, "Cannot get " + TAG
                 + " - it has been shut down");
-        return sInstance;
+        return instance;
     }
 
     public Future<?> submit(Runnable runnable, String description) {
-        if (IS_DEBUGGABLE) {
-            return mService.submit(() -> {
-                Slog.d(TAG, "Started executing " + description);
-                try {
-                    runnable.run();
-                } catch (RuntimeException e) {
-                    Slog.e(TAG, "Failure in " + description + ": " + e, e);
-                    throw e;
+        return submit(runnable, description, new String[0]);
+    }
+
+    /**
+     * Submits a task which is started once the tasks with the given descriptions have finished.
+     * If one of them fails, this task is not run and fails as well.
+     *
+     * @param dependencies descriptions of tasks submitted earlier
+     * @throws IllegalArgumentException if no task with one of the descriptions was submitted
+     */
+    public Future<?> submit(Runnable runnable, String description, String... dependencies) {
+        final InitTask task = new InitTask(description);
+        synchronized (mLock) {
+            Preconditions.checkState(!mShuttingDown && mService != null,
+                    TAG + " has been shut down");
+            final CompletableFuture<?>[] dependencyFutures =
+                    new CompletableFuture<?>[dependencies.length];
+            for (int i = 0; i < dependencies.length; i++) {
+                final InitTask dependency = mTasksByDescription.get(dependencies[i]);
+                if (dependency == null) {
+                    throw new IllegalArgumentException("Unknown dependency " + dependencies[i]
+                            + " of " + description);
                 }
-                Slog.d(TAG, "Finished executing "  + description);
-            });
+                task.dependencies.add(dependency);
+                dependencyFutures[i] = dependency.future;
+            }
+            final Runnable body = () -> task.run(runnable);
+            task.future = dependencyFutures.length == 0
+                    ? CompletableFuture.runAsync(body, mService)
+                    : CompletableFuture.allOf(dependencyFutures).thenRunAsync(body, mService);
+            mTasks.add(task);
+            mTasksByDescription.put(description, task);
         }
-        return mService.submit(runnable);
+        return task.future;
     }
 
-    static synchronized void shutdown() {
-        if (sInstance != null && sInstance.mService != null) {
-            sInstance.mService.shutdown();
-            boolean terminated;
-            try {
-                terminated = sInstance.mService.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS,
-                        TimeUnit.MILLISECONDS);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new IllegalStateException(TAG + " init interrupted");
+    static void shutdown() {
+        synchronized (SystemServerInitThreadPool.class) {
+            final SystemServerInitThreadPool instance = sInstance;
+            if (instance != null && instance.mService != null) {
+                instance.shutdownLocked();
             }
-            List<Runnable> unstartedRunnables = sInstance.mService.shutdownNow();
+        }
+    }
+
+    private void shutdownLocked() {
+        final ForkJoinPool service;
+        final CompletableFuture<?>[] futures;
+        synchronized (mLock) {
+            mShuttingDown = true;
+            service = mService;
+            futures = new CompletableFuture<?>[mTasks.size()];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = mTasks.get(i).future;
+            }
+        }
+        boolean terminated = true;
+        try {
+            CompletableFuture.allOf(futures).get(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(TAG + " init interrupted");
+        } catch (ExecutionException e) {
+            // Failures are reported below, along with the tasks skipped because of them
+        } catch (TimeoutException e) {
+            terminated = false;
+        }
+        synchronized (mLock) {
             if (!terminated) {
-                throw new IllegalStateException("Cannot shutdown. Unstarted tasks "
-                        + unstartedRunnables);
+                service.shutdownNow();
+                throw new IllegalStateException("Cannot shutdown. Blocking tasks "
+                        + getBlockingTasksLocked() + ", failed tasks " + getFailedTasksLocked());
+            }
+            final List<String> failed = getFailedTasksLocked();
+            if (!failed.isEmpty()) {
+                Slog.w(TAG, "Failed tasks " + failed);
+            }
+            service.shutdown();
+            mService = null; // Make mService eligible for GC
+            Slog.i(TAG, "Critical path " + getCriticalPathLocked());
+            mTasks.clear();
+            mTasksByDescription.clear();
+        }
+        Slog.d(TAG, "Shutdown successful");
+    }
+
+    /** Describes the unfinished tasks: how long they have been running, or what they wait for. */
+    private List<String> getBlockingTasksLocked() {
+        final long now = SystemClock.elapsedRealtime();
+        final ArrayList<String> blocking = new ArrayList<>();
+        for (InitTask task : mTasks) {
+            if (task.future.isDone()) {
+                continue;
+            }
+            if (task.startTime != 0) {
+                blocking.add(task.description + " (running for " + (now - task.startTime) + "ms)");
+            } else {
+                final ArrayList<String> waitingFor = new ArrayList<>();
+                for (InitTask dependency : task.dependencies) {
+                    if (!dependency.future.isDone()) {
+                        waitingFor.add(dependency.description);
+                    }
+                }
+                final List<String> failedDependencies = getFailedDependencies(task);
+                blocking.add(task.description + " (waiting for " + waitingFor
+                        + (failedDependencies.isEmpty() ? ""
+                                : ", will be skipped as " + failedDependencies + " failed")
+                        + ")");
+            }
+        }
+        return blocking;
+    }
+
+    /**
+     * Describes the tasks which failed, and those which were skipped because a task they depend
+     * on failed.
+     */
+    private List<String> getFailedTasksLocked() {
+        final ArrayList<String> failed = new ArrayList<>();
+        for (InitTask task : mTasks) {
+            if (!task.future.isCompletedExceptionally()) {
+                continue;
+            }
+            if (task.startTime != 0) {
+                failed.add(task.description);
+            } else {
+                failed.add(task.description + " (skipped as " + getFailedDependencies(task)
+                        + " failed)");
+            }
+        }
+        return failed;
+    }
+
+    private static List<String> getFailedDependencies(InitTask task) {
+        final ArrayList<String> failed = new ArrayList<>();
+        for (InitTask dependency : task.dependencies) {
+            if (dependency.future.isCompletedExceptionally()) {
+                failed.add(dependency.description);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Returns the chain of tasks which determined the end of the boot phase: starting with the
+     * task finishing last, each task is preceded by the dependency which finished last.
+     */
+    private List<String> getCriticalPathLocked() {
+        InitTask last = null;
+        for (InitTask task : mTasks) {
+            if (last == null || task.endTime > last.endTime) {
+                last = task;
+            }
+        }
+        final ArrayList<String> path = new ArrayList<>();
+        while (last != null) {
+            path.add(last.description + " " + (last.endTime - last.startTime) + "ms");
+            InitTask gating = null;
+            for (InitTask dependency : last.dependencies) {
+                if (gating == null || dependency.endTime > gating.endTime) {
+                    gating = dependency;
+                }
+            }
+            last = gating;
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    private static final class InitTask {
+        final String description;
+        final ArrayList<InitTask> dependencies = new ArrayList<>();
+        CompletableFuture<?> future;
+        // SystemClock.elapsedRealtime() when the task started and finished, 0 if not yet
+        volatile long startTime;
+        volatile long endTime;
+
+        InitTask(String description) {
+            this.description = description;
+        }
+
+        void run(Runnable runnable) {
+            startTime = SystemClock.elapsedRealtime();
+            if (IS_DEBUGGABLE) {
+                Slog.d(TAG, "Started executing " + description);
+            }
+            try {
+                runnable.run();
+            } catch (RuntimeException e) {
+                if (IS_DEBUGGABLE) {
+                    Slog.e(TAG, "Failure in " + description + ": " + e, e);
+                }
+                throw e;
+            } finally {
+                endTime = SystemClock.elapsedRealtime();
+            }
+            if (IS_DEBUGGABLE) {
+                Slog.d(TAG, "Finished executing " + description + " in "
+                        + (endTime - startTime) + "ms");
             }
-            sInstance.mService = null; // Make mService eligible for GC
-            Slog.d(TAG, "Shutdown successful");
+        }
+    }
+
+    private static final class InitThreadFactory
+            implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+        private final AtomicInteger mThreadNum = new AtomicInteger();
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            final ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {
+                @Override
+                protected void onStart() {
+                    super.onStart();
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_FOREGROUND);
+                }
+            };
+            thread.setName("system-server-init-thread-" + mThreadNum.incrementAndGet());
+            return thread;
         }
     }
 
@@ -68,39 +68,99 @@ public class ConntrackMessage extends NetlinkMessage {
     public static final short CTA_PROTO_SRC_PORT = 2;
     public static final short CTA_PROTO_DST_PORT = 3;
 
+    // Attribute lengths of an IPv4 timeout update request, see packIPv4TimeoutUpdateRequest().
+    private static final int CTA_IP_V4_LENGTH = NLA_HEADERLEN + IPV4_ADDR_LEN;
+    private static final int CTA_PROTO_NUM_LENGTH = NLA_HEADERLEN + Byte.BYTES;
+    private static final int CTA_PROTO_PORT_LENGTH = NLA_HEADERLEN + Short.BYTES;
+    private static final int CTA_TIMEOUT_LENGTH = NLA_HEADERLEN + Integer.BYTES;
+    private static final int CTA_TUPLE_IP_LENGTH =
+            NLA_HEADERLEN + 2 * alignedLengthOf(CTA_IP_V4_LENGTH);
+    private static final int CTA_TUPLE_PROTO_LENGTH = NLA_HEADERLEN
+            + alignedLengthOf(CTA_PROTO_NUM_LENGTH) + 2 * alignedLengthOf(CTA_PROTO_PORT_LENGTH);
+    private static final int CTA_TUPLE_ORIG_LENGTH = NLA_HEADERLEN
+            + alignedLengthOf(CTA_TUPLE_IP_LENGTH) + alignedLengthOf(CTA_TUPLE_PROTO_LENGTH);
+
+    /** Length in bytes of a request written by {@link #packIPv4TimeoutUpdateRequest}. */
+    public static final int IPV4_TIMEOUT_UPDATE_REQUEST_LENGTH = STRUCT_SIZE
+            + alignedLengthOf(CTA_TUPLE_ORIG_LENGTH) + alignedLengthOf(CTA_TIMEOUT_LENGTH);
+
     public static byte[] newIPv4TimeoutUpdateRequest(
             int proto, Inet4Address src, int sport, Inet4Address dst, int dport, int timeoutSec) {
-        // *** STYLE WARNING ***
-        //
-        // Code below this point uses extra block indentation to highlight the
-        // packing of nested tuple netlink attribute types.
-        final StructNlAttr ctaTupleOrig = new StructNlAttr(CTA_TUPLE_ORIG,
-                new StructNlAttr(CTA_TUPLE_IP,
-                        new StructNlAttr(CTA_IP_V4_SRC, src),
-                        new StructNlAttr(CTA_IP_V4_DST, dst)),
-                new StructNlAttr(CTA_TUPLE_PROTO,
-                        new StructNlAttr(CTA_PROTO_NUM, (byte) proto),
-                        new StructNlAttr(CTA_PROTO_SRC_PORT, (short) sport, BIG_ENDIAN),
-                        new StructNlAttr(CTA_PROTO_DST_PORT, (short) dport, BIG_ENDIAN)));
-
-        final StructNlAttr ctaTimeout = new StructNlAttr(CTA_TIMEOUT, timeoutSec, BIG_ENDIAN);
-
-        final int payloadLength = ctaTupleOrig.getAlignedLength() + ctaTimeout.getAlignedLength();
-        final byte[] bytes = new byte[STRUCT_SIZE + payloadLength];
-        final ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+        final byte[] bytes = new byte[IPV4_TIMEOUT_UPDATE_REQUEST_LENGTH];
+        packIPv4TimeoutUpdateRequest(ByteBuffer.wrap(bytes), 1 /* seq */,
+                proto, src, sport, dst, dport, timeoutSec);
+        return bytes;
+    }
+
+    /**
+     * Writes a conntrack timeout update request at the current position of the buffer, which
+     * must have {@link #IPV4_TIMEOUT_UPDATE_REQUEST_LENGTH} bytes remaining, and advances the
+     * position past it. The byte order of the buffer is left unchanged.
+     *
+     * <p>No objects are created besides the address copies made by {@link Inet4Address}, so a
+     * caller refreshing many entries can keep one buffer (heap or direct) and pack several
+     * requests back to back, each with its own sequence number, to send them in a single write.
+     */
+    public static void packIPv4TimeoutUpdateRequest(ByteBuffer byteBuffer, int seq,
+            int proto, Inet4Address src, int sport, Inet4Address dst, int dport, int timeoutSec) {
+        final ByteOrder originalOrder = byteBuffer.order();
         byteBuffer.order(ByteOrder.nativeOrder());
+        try {
+            // struct nlmsghdr
+            byteBuffer.putInt(IPV4_TIMEOUT_UPDATE_REQUEST_LENGTH);
+            byteBuffer.putShort((short) ((NFNL_SUBSYS_CTNETLINK << 8) | IPCTNL_MSG_CT_NEW));
+            byteBuffer.putShort((short) (NLM_F_REQUEST | NLM_F_ACK | NLM_F_REPLACE));
+            byteBuffer.putInt(seq);
+            byteBuffer.putInt(0);  // nlmsg_pid
+            // struct nfgenmsg
+            byteBuffer.put((byte) OsConstants.AF_INET);
+            byteBuffer.put((byte) StructNfGenMsg.NFNETLINK_V0);
+            byteBuffer.putShort((short) 0);  // res_id
+
+            // *** STYLE WARNING ***
+            //
+            // Code below this point uses extra block indentation to highlight the
+            // packing of nested tuple netlink attribute types.
+            putNestedAttrHeader(byteBuffer, CTA_TUPLE_ORIG, CTA_TUPLE_ORIG_LENGTH);
+                putNestedAttrHeader(byteBuffer, CTA_TUPLE_IP, CTA_TUPLE_IP_LENGTH);
+                    putAttrHeader(byteBuffer, CTA_IP_V4_SRC, CTA_IP_V4_LENGTH);
+                    byteBuffer.put(src.getAddress());
+                    putAttrHeader(byteBuffer, CTA_IP_V4_DST, CTA_IP_V4_LENGTH);
+                    byteBuffer.put(dst.getAddress());
+                putNestedAttrHeader(byteBuffer, CTA_TUPLE_PROTO, CTA_TUPLE_PROTO_LENGTH);
+                    putAttrHeader(byteBuffer, CTA_PROTO_NUM, CTA_PROTO_NUM_LENGTH);
+                    byteBuffer.put((byte) proto);
+                    putPadding(byteBuffer, CTA_PROTO_NUM_LENGTH);
+                    putAttrHeader(byteBuffer, CTA_PROTO_SRC_PORT, CTA_PROTO_PORT_LENGTH);
+                    byteBuffer.order(BIG_ENDIAN).putShort((short) sport);
+                    byteBuffer.order(ByteOrder.nativeOrder());
+                    putPadding(byteBuffer, CTA_PROTO_PORT_LENGTH);
+                    putAttrHeader(byteBuffer, CTA_PROTO_DST_PORT, CTA_PROTO_PORT_LENGTH);
+                    byteBuffer.order(BIG_ENDIAN).putShort((short) dport);
+                    byteBuffer.order(ByteOrder.nativeOrder());
+                    putPadding(byteBuffer, CTA_PROTO_PORT_LENGTH);
+            putAttrHeader(byteBuffer, CTA_TIMEOUT, CTA_TIMEOUT_LENGTH);
+            byteBuffer.order(BIG_ENDIAN).putInt(timeoutSec);
+        } finally {
+            byteBuffer.order(originalOrder);
+        }
+    }
 
-        final ConntrackMessage ctmsg = new ConntrackMessage();
-        ctmsg.mHeader.nlmsg_len = bytes.length;
-        ctmsg.mHeader.nlmsg_type = (NFNL_SUBSYS_CTNETLINK << 8) | IPCTNL_MSG_CT_NEW;
-        ctmsg.mHeader.nlmsg_flags = NLM_F_REQUEST | NLM_F_ACK | NLM_F_REPLACE;
-        ctmsg.mHeader.nlmsg_seq = 1;
-        ctmsg.pack(byteBuffer);
+    private static void putAttrHeader(ByteBuffer byteBuffer, short type, int length) {
+        byteBuffer.putShort((short) length);
+        byteBuffer.putShort(type);
+    }
 
-        ctaTupleOrig.pack(byteBuffer);
-        ctaTimeout.pack(byteBuffer);
+    private static void putNestedAttrHeader(ByteBuffer byteBuffer, short type, int length) {
+        putAttrHeader(byteBuffer, makeNestedType(type), length);
+    }
 
-        return bytes;
+    // Zeroes the bytes aligning an attribute of the given length, which a reused buffer may
+    // still hold from an earlier message.
+    private static void putPadding(ByteBuffer byteBuffer, int attrLength) {
+        for (int i = attrLength; i < alignedLengthOf(attrLength); i++) {
+            byteBuffer.put((byte) 0);
+        }
     }
 
     protected StructNfGenMsg mNfGenMsg;
@@ -23,14 +23,19 @@ import com.google.gwt.core.ext.linker.PrecompilationMetricsArtifact;
 import com.google.gwt.core.ext.linker.impl.StandardLinkerContext;
 import com.google.gwt.core.ext.typeinfo.JClassType;
 import com.google.gwt.dev.CompileTaskRunner.CompileTask;
+import com.google.gwt.dev.cfg.BindingProperty;
+import com.google.gwt.dev.cfg.ConfigurationProperty;
 import com.google.gwt.dev.cfg.ModuleDef;
 import com.google.gwt.dev.cfg.ModuleDefLoader;
+import com.google.gwt.dev.cfg.Property;
 import com.google.gwt.dev.cfg.PropertyCombinations;
 import com.google.gwt.dev.javac.CompilationState;
 import com.google.gwt.dev.javac.CompilationUnit;
 import com.google.gwt.dev.jjs.JavaToJavaScriptCompiler;
 import com.google.gwt.dev.jjs.PrecompilationContext;
 import com.google.gwt.dev.jjs.UnifiedAst;
+import com.google.gwt.dev.resource.Resource;
+import com.google.gwt.dev.resource.ResourceOracle;
 import com.google.gwt.dev.util.CollapsedPropertyKey;
 import com.google.gwt.dev.util.Memory;
 import com.google.gwt.dev.util.Util;
@@ -39,17 +44,27 @@ import com.google.gwt.dev.util.log.speedtracer.CompilerEventType;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
 import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
  * Performs the first phase of compilation, generating the set of permutations
@@ -74,6 +89,21 @@ public class Precompile {
 
   static final String PRECOMPILE_FILENAME_SUFFIX = ".ser";
 
+  /**
+   * System property naming a directory where precompilations are kept across runs. A precompilation
+   * is reused when the GWT version, the options, the module's properties, its source and build
+   * resources and the classpath (module files, generators and linkers) are unchanged. Generators
+   * reading anything else (such as files outside of the classpath) are not tracked, so this should
+   * only be enabled for modules whose generators don't.
+   */
+  static final String PRECOMPILE_CACHE_DIR_PROPERTY = "gwt.precompile.cacheDir";
+
+  /**
+   * The most precompilations kept in {@link #PRECOMPILE_CACHE_DIR_PROPERTY}, the least recently
+   * used ones are deleted beyond that.
+   */
+  private static final int PRECOMPILE_CACHE_MAX_ENTRIES = 10;
+
   /**
    * Performs a command-line precompile.
    */
@@ -437,6 +467,27 @@ public class Precompile {
           TreeLogger branch =
               logger.branch(TreeLogger.INFO, "Precompiling module " + module.getName());
 
+          File cacheDir = getPrecompilationCacheDir();
+          String cacheKey = cacheDir == null ? null : computePrecompilationCacheKey(branch, module);
+          File cachedPrecompilationFile =
+              cacheKey == null ? null : new File(cacheDir, cacheKey + PRECOMPILE_FILENAME_SUFFIX);
+          File cachedPermCountFile =
+              cacheKey == null ? null : new File(cacheDir, cacheKey + "-" + PERM_COUNT_FILENAME);
+
+          if (cachedPrecompilationFile != null && cachedPrecompilationFile.isFile()
+              && cachedPermCountFile.isFile()) {
+            // Same inputs as an earlier run, reuse its precompilation.
+            copyFile(branch, cachedPrecompilationFile, precompilationFile);
+            copyFile(branch, cachedPermCountFile, new File(compilerWorkDir, PERM_COUNT_FILENAME));
+            // Marks the entry as recently used for the eviction.
+            cachedPrecompilationFile.setLastModified(System.currentTimeMillis());
+            if (branch.isLoggable(TreeLogger.INFO)) {
+              branch.log(TreeLogger.INFO, "Precompilation reused from " + cachedPrecompilationFile
+                  + ", number of permutations: " + Util.readFileAsString(cachedPermCountFile));
+            }
+            continue;
+          }
+
           Precompilation precompilation = precompile(branch, compilerContext);
           if (precompilation == null) {
             branch.log(TreeLogger.ERROR, "Precompilation failed");
@@ -455,9 +506,162 @@ public class Precompile {
             branch.log(TreeLogger.INFO, "Precompilation succeeded, number of permutations: "
                 + permsPrecompiled);
           }
+
+          if (cachedPrecompilationFile != null) {
+            // The precompilation file is written last, an entry without it is ignored.
+            cacheDir.mkdirs();
+            copyFile(branch, new File(compilerWorkDir, PERM_COUNT_FILENAME), cachedPermCountFile);
+            copyFile(branch, precompilationFile, cachedPrecompilationFile);
+            evictPrecompilations(cacheDir);
+          }
         }
       }
     }
     return true;
   }
+
+  private static File getPrecompilationCacheDir() {
+    String cacheDir = System.getProperty(PRECOMPILE_CACHE_DIR_PROPERTY);
+    return cacheDir == null || cacheDir.isEmpty() ? null : new File(cacheDir);
+  }
+
+  /**
+   * Computes the key of the precompilation of a module from everything it depends on, see
+   * {@link #PRECOMPILE_CACHE_DIR_PROPERTY}. Returns null if the inputs can't be read.
+   */
+  private String computePrecompilationCacheKey(TreeLogger logger, ModuleDef module) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      digest.update(About.getGwtVersionNum().getBytes("UTF-8"));
+
+      ByteArrayOutputStream serializedOptions = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(serializedOptions);
+      out.writeObject(options);
+      out.close();
+      digest.update(serializedOptions.toByteArray());
+
+      updateDigest(digest, module);
+      updateDigest(digest, module.getSourceResourceOracle());
+      updateDigest(digest, module.getBuildResourceOracle());
+      updateDigestWithClassPath(digest);
+      return new BigInteger(1, digest.digest()).toString(16);
+    } catch (IOException e) {
+      logger.log(TreeLogger.WARN, "Unable to compute the precompilation cache key", e);
+      return null;
+    } catch (NoSuchAlgorithmException e) {
+      logger.log(TreeLogger.WARN, "Unable to compute the precompilation cache key", e);
+      return null;
+    }
+  }
+
+  /**
+   * Adds the deferred binding and configuration properties of the module, as set by its module
+   * files, and its linkers to the digest.
+   */
+  private static void updateDigest(MessageDigest digest, ModuleDef module) throws IOException {
+    SortedMap<String, String> properties = new TreeMap<String, String>();
+    for (Property property : module.getProperties()) {
+      if (property instanceof BindingProperty) {
+        BindingProperty bindingProperty = (BindingProperty) property;
+        properties.put(property.getName(), bindingProperty.getDefinedValues() + " "
+            + bindingProperty.getConstrainedValue() + " " + bindingProperty.getFallbackValue());
+      } else if (property instanceof ConfigurationProperty) {
+        properties.put(property.getName(),
+            String.valueOf(((ConfigurationProperty) property).getValues()));
+      }
+    }
+    digest.update(properties.toString().getBytes("UTF-8"));
+    digest.update(new TreeSet<String>(module.getActiveLinkerNames()).toString().getBytes("UTF-8"));
+  }
+
+  /**
+   * Adds the classpath to the digest, so that changes to the module files and to the generator and
+   * linker classes are noticed. Only the sizes and modification times of the files are read.
+   */
+  private static void updateDigestWithClassPath(MessageDigest digest) throws IOException {
+    String classPath = System.getProperty("java.class.path", "");
+    for (String entry : classPath.split(File.pathSeparator)) {
+      if (!entry.isEmpty()) {
+        updateDigest(digest, new File(entry));
+      }
+    }
+  }
+
+  private static void updateDigest(MessageDigest digest, File file) throws IOException {
+    digest.update((file.getPath() + " " + file.length() + " " + file.lastModified())
+        .getBytes("UTF-8"));
+    File[] children = file.listFiles();
+    if (children != null) {
+      Arrays.sort(children);
+      for (File child : children) {
+        updateDigest(digest, child);
+      }
+    }
+  }
+
+  private static void updateDigest(MessageDigest digest, ResourceOracle resourceOracle)
+      throws IOException {
+    for (String path : new TreeSet<String>(resourceOracle.getPathNames())) {
+      Resource resource = resourceOracle.getResource(path);
+      digest.update(path.getBytes("UTF-8"));
+      InputStream contents = resource.openContents();
+      try {
+        digest.update(Util.readStreamAsBytes(contents));
+      } finally {
+        contents.close();
+      }
+    }
+  }
+
+  /**
+   * Deletes the least recently used precompilations beyond {@link #PRECOMPILE_CACHE_MAX_ENTRIES}.
+   */
+  private static void evictPrecompilations(File cacheDir) {
+    File[] entries = cacheDir.listFiles();
+    if (entries == null) {
+      return;
+    }
+    List<File> precompilationFiles = new ArrayList<File>();
+    for (File entry : entries) {
+      if (entry.getName().endsWith(PRECOMPILE_FILENAME_SUFFIX)) {
+        precompilationFiles.add(entry);
+      }
+    }
+    if (precompilationFiles.size() <= PRECOMPILE_CACHE_MAX_ENTRIES) {
+      return;
+    }
+    Collections.sort(precompilationFiles, new Comparator<File>() {
+      @Override
+      public int compare(File a, File b) {
+        long aModified = a.lastModified();
+        long bModified = b.lastModified();
+        return aModified > bModified ? -1 : aModified < bModified ? 1 : 0;
+      }
+    });
+    for (File precompilationFile : precompilationFiles.subList(PRECOMPILE_CACHE_MAX_ENTRIES,
+        precompilationFiles.size())) {
+      String name = precompilationFile.getName();
+      String cacheKey = name.substring(0, name.length() - PRECOMPILE_FILENAME_SUFFIX.length());
+      // The precompilation file goes first, an entry without it is ignored.
+      precompilationFile.delete();
+      new File(cacheDir, cacheKey + "-" + PERM_COUNT_FILENAME).delete();
+    }
+  }
+
+  /**
+   * Copies a file through a temporary file next to the destination, so that the destination is
+   * either missing or complete.
+   */
+  private static void copyFile(TreeLogger logger, File from, File to)
+      throws UnableToCompleteException {
+    File tmp = new File(to.getParentFile(), to.getName() + ".tmp");
+    Util.writeBytesToFile(logger, tmp, Util.readFileAsBytes(from));
+    if (!tmp.renameTo(to)) {
+      to.delete();
+      if (!tmp.renameTo(to)) {
+        logger.log(TreeLogger.ERROR, "Unable to write " + to);
+        throw new UnableToCompleteException();
+      }
+    }
+  }
 }
@@ -21,6 +21,7 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteStatement;
@@ -354,9 +355,15 @@ class AccountsDb implements AutoCloseable {
 
     boolean deleteAuthtokensByAccountIdAndType(long accountId, String authtokenType) {
         SQLiteDatabase db = mDeDatabase.getWritableDatabaseUserIsUnlocked();
-        return db.delete(CE_TABLE_AUTHTOKENS,
-                AUTHTOKENS_ACCOUNTS_ID + "=?" + " AND " + AUTHTOKENS_TYPE + "=?",
-                new String[]{String.valueOf(accountId), authtokenType}) > 0;
+        SQLiteStatement statement = db.compileStatement("DELETE FROM " + CE_TABLE_AUTHTOKENS
+                + " WHERE " + AUTHTOKENS_ACCOUNTS_ID + "=? AND " + AUTHTOKENS_TYPE + "=?");
+        try {
+            statement.bindLong(1, accountId);
+            bindStringOrNull(statement, 2, authtokenType);
+            return statement.executeUpdateDelete() > 0;
+        } finally {
+            statement.close();
+        }
     }
 
     boolean deleteAuthToken(String authTokenId) {
@@ -368,12 +375,17 @@ class AccountsDb implements AutoCloseable {
 
     long insertAuthToken(long accountId, String authTokenType, String authToken) {
         SQLiteDatabase db = mDeDatabase.getWritableDatabaseUserIsUnlocked();
-        ContentValues values = new ContentValues();
-        values.put(AUTHTOKENS_ACCOUNTS_ID, accountId);
-        values.put(AUTHTOKENS_TYPE, authTokenType);
-        values.put(AUTHTOKENS_AUTHTOKEN, authToken);
-        return db.insert(
-                CE_TABLE_AUTHTOKENS, AUTHTOKENS_AUTHTOKEN, values);
+        SQLiteStatement statement = db.compileStatement("INSERT INTO " + CE_TABLE_AUTHTOKENS
+                + "(" + AUTHTOKENS_ACCOUNTS_ID + "," + AUTHTOKENS_TYPE + ","
+                + AUTHTOKENS_AUTHTOKEN + ") VALUES (?,?,?)");
+        try {
+            statement.bindLong(1, accountId);
+            bindStringOrNull(statement, 2, authTokenType);
+            bindStringOrNull(statement, 3, authToken);
+            return executeInsert(statement);
+        } finally {
+            statement.close();
+        }
     }
 
     int updateCeAccountPassword(long accountId, String password) {
@@ -418,21 +430,30 @@ class AccountsDb implements AutoCloseable {
 
     boolean updateExtra(long extrasId, String value) {
         SQLiteDatabase db = mDeDatabase.getWritableDatabaseUserIsUnlocked();
-        ContentValues values = new ContentValues();
-        values.put(EXTRAS_VALUE, value);
-        int rows = db.update(
-                TABLE_EXTRAS, values, EXTRAS_ID + "=?",
-                new String[]{String.valueOf(extrasId)});
-        return rows == 1;
+        SQLiteStatement statement = db.compileStatement("UPDATE " + TABLE_EXTRAS
+                + " SET " + EXTRAS_VALUE + "=? WHERE " + EXTRAS_ID + "=?");
+        try {
+            bindStringOrNull(statement, 1, value);
+            statement.bindString(2, String.valueOf(extrasId));
+            return statement.executeUpdateDelete() == 1;
+        } finally {
+            statement.close();
+        }
     }
 
     long insertExtra(long accountId, String key, String value) {
         SQLiteDatabase db = mDeDatabase.getWritableDatabaseUserIsUnlocked();
-        ContentValues values = new ContentValues();
-        values.put(EXTRAS_KEY, key);
-        values.put(EXTRAS_ACCOUNTS_ID, accountId);
-        values.put(EXTRAS_VALUE, value);
-        return db.insert(CE_TABLE_EXTRAS, EXTRAS_KEY, values);
+        SQLiteStatement statement = db.compileStatement("INSERT INTO " + CE_TABLE_EXTRAS
+                + "(" + EXTRAS_KEY + "," + EXTRAS_ACCOUNTS_ID + "," + EXTRAS_VALUE
+                + ") VALUES (?,?,?)");
+        try {
+            bindStringOrNull(statement, 1, key);
+            statement.bindLong(2, accountId);
+            bindStringOrNull(statement, 3, value);
+            return executeInsert(statement);
+        } finally {
+            statement.close();
+        }
     }
 
     Map<String, String> findUserExtrasForAccount(Account account) {
@@ -795,6 +816,41 @@ class AccountsDb implements AutoCloseable {
         }
     }
 
+    /**
+     * Returns the DE ids of the given accounts, -1 for accounts which don't exist, reading the
+     * accounts table once instead of querying every account.
+     */
+    long[] findDeAccountIds(Account[] accounts) {
+        return findAccountIds(mDeDatabase.getReadableDatabase(), TABLE_ACCOUNTS, accounts);
+    }
+
+    /**
+     * Returns the CE ids of the given accounts, -1 for accounts which don't exist.
+     *
+     * @see #findDeAccountIds(Account[])
+     */
+    long[] findCeAccountIds(Account[] accounts) {
+        return findAccountIds(mDeDatabase.getReadableDatabaseUserIsUnlocked(), CE_TABLE_ACCOUNTS,
+                accounts);
+    }
+
+    private static long[] findAccountIds(SQLiteDatabase db, String table, Account[] accounts) {
+        HashMap<Account, Long> ids = new HashMap<>();
+        String[] columns = {ACCOUNTS_ID, ACCOUNTS_NAME, ACCOUNTS_TYPE};
+        try (Cursor cursor = db.query(table, columns, null, null, null, null, null)) {
+            while (cursor.moveToNext()) {
+                ids.put(new Account(cursor.getString(1), cursor.getString(2)),
+                        cursor.getLong(0));
+            }
+        }
+        long[] result = new long[accounts.length];
+        for (int i = 0; i < accounts.length; i++) {
+            Long id = ids.get(accounts[i]);
+            result[i] = id != null ? id : -1;
+        }
+        return result;
+    }
+
     Map<Long, Account> findAllDeAccounts() {
         SQLiteDatabase db = mDeDatabase.getReadableDatabase();
         LinkedHashMap<Long, Account> map = new LinkedHashMap<>();
@@ -886,11 +942,17 @@ class AccountsDb implements AutoCloseable {
 
     long insertGrant(long accountId, String authTokenType, int uid) {
         SQLiteDatabase db = mDeDatabase.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(GRANTS_ACCOUNTS_ID, accountId);
-        values.put(GRANTS_AUTH_TOKEN_TYPE, authTokenType);
-        values.put(GRANTS_GRANTEE_UID, uid);
-        return db.insert(TABLE_GRANTS, GRANTS_ACCOUNTS_ID, values);
+        SQLiteStatement statement = db.compileStatement("INSERT INTO " + TABLE_GRANTS
+                + "(" + GRANTS_ACCOUNTS_ID + "," + GRANTS_AUTH_TOKEN_TYPE + ","
+                + GRANTS_GRANTEE_UID + ") VALUES (?,?,?)");
+        try {
+            statement.bindLong(1, accountId);
+            bindStringOrNull(statement, 2, authTokenType);
+            statement.bindLong(3, uid);
+            return executeInsert(statement);
+        } finally {
+            statement.close();
+        }
     }
 
     boolean deleteGrantsByUid(int uid) {
@@ -901,11 +963,17 @@ class AccountsDb implements AutoCloseable {
 
     boolean setAccountVisibility(long accountId, String packageName, int visibility) {
         SQLiteDatabase db = mDeDatabase.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(VISIBILITY_ACCOUNTS_ID, String.valueOf(accountId));
-        values.put(VISIBILITY_PACKAGE, packageName);
-        values.put(VISIBILITY_VALUE, String.valueOf(visibility));
-        return (db.replace(TABLE_VISIBILITY, VISIBILITY_VALUE, values) != -1);
+        SQLiteStatement statement = db.compileStatement("INSERT OR REPLACE INTO "
+                + TABLE_VISIBILITY + "(" + VISIBILITY_ACCOUNTS_ID + "," + VISIBILITY_PACKAGE + ","
+                + VISIBILITY_VALUE + ") VALUES (?,?,?)");
+        try {
+            statement.bindString(1, String.valueOf(accountId));
+            bindStringOrNull(statement, 2, packageName);
+            statement.bindString(3, String.valueOf(visibility));
+            return executeInsert(statement) != -1;
+        } finally {
+            statement.close();
+        }
     }
 
     Integer findAccountVisibility(Account account, String packageName) {
@@ -1267,6 +1335,41 @@ class AccountsDb implements AutoCloseable {
         mDeDatabase.getWritableDatabase().endTransaction();
     }
 
+    /**
+     * Runs the given operations in a single transaction. The CE database is attached to the DE
+     * connection, so the operations may update both and are committed together, e.g. when
+     * syncing many accounts, auth tokens or grants at once.
+     */
+    void runInTransaction(Runnable operations) {
+        beginTransaction();
+        try {
+            operations.run();
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    /**
+     * Executes an insert statement, returning -1 on failure like {@link SQLiteDatabase#insert}.
+     */
+    private static long executeInsert(SQLiteStatement statement) {
+        try {
+            return statement.executeInsert();
+        } catch (SQLException e) {
+            Log.e(TAG, "Error executing " + statement, e);
+            return -1;
+        }
+    }
+
     void attachCeDatabase(File ceDbFile) {
         CeDatabaseHelper.create(mContext, mPreNDatabaseFile, ceDbFile);
         SQLiteDatabase db = mDeDatabase.getWritableDatabase();
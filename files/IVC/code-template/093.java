@@ -17,12 +17,12 @@
 package org.apache.commons.lang.enums;
 
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.WeakHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -251,9 +251,13 @@ public abstract class Enum implements Comparable, Serializable {
     private static final Map EMPTY_MAP = Collections.unmodifiableMap(new HashMap(0));
     
     /**
-     * <code>Map</code>, key of class name, value of <code>Entry</code>.
+     * <code>Map</code>, key of class name, value of <code>ClassEntry[]</code> (one per
+     * class loader that defined a class of that name).
+     * Never modified once published: a new map is built while holding the lock on
+     * <code>Enum.class</code>, so that lookups need no locking. Entries of classes that
+     * were garbage collected are dropped when the next map is built.
      */
-    private static final Map cEnumClasses = new WeakHashMap();
+    private static volatile Map cEnumClasses = EMPTY_MAP;
     
     /**
      * The string representation of the Enum.
@@ -272,25 +276,38 @@ public abstract class Enum implements Comparable, Serializable {
     protected transient String iToString = null;
 
     /**
-     * <p>Enable the iterator to retain the source code order.</p>
+     * <p>An <code>Entry</code> with a weak reference to its Enum class.</p>
      */
-    private static class Entry {
+    private static class ClassEntry extends WeakReference {
         /**
-         * Map of Enum name to Enum.
+         * The entry of the class.
          */
-        final Map map = new HashMap();
+        final Entry entry;
+
         /**
-         * Map of Enum name to Enum.
+         * <p>Restrictive constructor.</p>
+         *
+         * @param enumClass  the Enum class
+         * @param entry  the entry of the class
          */
-        final Map unmodifiableMap = Collections.unmodifiableMap(map);
+        ClassEntry(Class enumClass, Entry entry) {
+            super(enumClass);
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * <p>Enable the iterator to retain the source code order.</p>
+     */
+    private static class Entry {
         /**
-         * List of Enums in source code order.
+         * Map of Enum name to Enum, replaced by a new map when an Enum is added.
          */
-        final List list = new ArrayList(25);
+        volatile Map unmodifiableMap = EMPTY_MAP;
         /**
-         * Map of Enum name to Enum.
+         * List of Enums in source code order, replaced by a new list when an Enum is added.
          */
-        final List unmodifiableList = Collections.unmodifiableList(list);
+        volatile List unmodifiableList = Collections.EMPTY_LIST;
 
         /**
          * <p>Restrictive constructor.</p>
@@ -298,6 +315,22 @@ public abstract class Enum implements Comparable, Serializable {
         protected Entry() {
           super();
         }
+
+        /**
+         * <p>Adds an Enum, the lock on <code>Enum.class</code> must be held.</p>
+         *
+         * @param name  the enum name
+         * @param enumeration  the enum to add
+         */
+        void add(String name, Enum enumeration) {
+            Map map = new HashMap(unmodifiableMap);
+            map.put(name, enumeration);
+            List list = new ArrayList(unmodifiableList.size() + 1);
+            list.addAll(unmodifiableList);
+            list.add(enumeration);
+            unmodifiableMap = Collections.unmodifiableMap(map);
+            unmodifiableList = Collections.unmodifiableList(list);
+        }
     }
 
     /**
@@ -347,17 +380,18 @@ public abstract class Enum implements Comparable, Serializable {
             throw new IllegalArgumentException("getEnumClass() must return a superclass of this class");
         }
         
-        // create entry
-        Entry entry = (Entry) cEnumClasses.get(enumClass);
-        if (entry == null) {
-            entry = createEntry(enumClass);
-            cEnumClasses.put(enumClass, entry);
-        }
-        if (entry.map.containsKey(name)) {
-            throw new IllegalArgumentException("The Enum name must be unique, '" + name + "' has already been added");
+        synchronized (Enum.class) {
+            // create entry
+            Entry entry = lookupEntry(enumClass);
+            if (entry == null) {
+                entry = createEntry(enumClass);
+                addEntry(enumClass, entry);
+            }
+            if (entry.unmodifiableMap.containsKey(name)) {
+                throw new IllegalArgumentException("The Enum name must be unique, '" + name + "' has already been added");
+            }
+            entry.add(name, this);
         }
-        entry.map.put(name, this);
-        entry.list.add(this);
     }
 
     /**
@@ -367,11 +401,11 @@ public abstract class Enum implements Comparable, Serializable {
      * @return the resolved object
      */
     protected Object readResolve() {
-        Entry entry = (Entry) cEnumClasses.get(getEnumClass());
+        Entry entry = lookupEntry(getEnumClass());
         if (entry == null) {
             return null;
         }
-        return entry.map.get(getName());
+        return entry.unmodifiableMap.get(getName());
     }
     
     //--------------------------------------------------------------------------------
@@ -392,7 +426,7 @@ public abstract class Enum implements Comparable, Serializable {
         if (entry == null) {
             return null;
         }
-        return (Enum) entry.map.get(name);
+        return (Enum) entry.unmodifiableMap.get(name);
     }
 
     /**
@@ -470,8 +504,58 @@ public abstract class Enum implements Comparable, Serializable {
         if (Enum.class.isAssignableFrom(enumClass) == false) {
             throw new IllegalArgumentException("The Class must be a subclass of Enum");
         }
-        Entry entry = (Entry) cEnumClasses.get(enumClass);
-        return entry;
+        return lookupEntry(enumClass);
+    }
+
+    /**
+     * <p>Finds the <code>Entry</code> of a class, without locking.</p>
+     *
+     * @param enumClass  the class of the <code>Enum</code> to get
+     * @return the enum entry, or <code>null</code> if the class has no Enums
+     */
+    private static Entry lookupEntry(Class enumClass) {
+        ClassEntry[] classEntries = (ClassEntry[]) cEnumClasses.get(enumClass.getName());
+        if (classEntries != null) {
+            for (int i = 0; i < classEntries.length; i++) {
+                if (classEntries[i].get() == enumClass) {
+                    return classEntries[i].entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * <p>Publishes a new map of Enum classes with the given entry added, the lock on
+     * <code>Enum.class</code> must be held.</p>
+     *
+     * @param enumClass  the class of the <code>Enum</code>
+     * @param entry  the entry of the class
+     */
+    private static void addEntry(Class enumClass, Entry entry) {
+        Map map = new HashMap();
+        for (Iterator it = cEnumClasses.entrySet().iterator(); it.hasNext();) {
+            Map.Entry mapEntry = (Map.Entry) it.next();
+            ClassEntry[] classEntries = (ClassEntry[]) mapEntry.getValue();
+            List live = new ArrayList(classEntries.length);
+            for (int i = 0; i < classEntries.length; i++) {
+                if (classEntries[i].get() != null) {
+                    live.add(classEntries[i]);
+                }
+            }
+            if (live.size() > 0) {
+                map.put(mapEntry.getKey(), live.toArray(new ClassEntry[live.size()]));
+            }
+        }
+        ClassEntry[] classEntries = (ClassEntry[]) map.get(enumClass.getName());
+        int length = (classEntries == null ? 0 : classEntries.length);
+        ClassEntry[] added = new ClassEntry[length + 1];
+        if (length > 0) {
+            System.arraycopy(classEntries, 0, added, 0, length);
+        }
+        added[length] = new ClassEntry(enumClass, entry);
+        map.put(enumClass.getName(), added);
+        cEnumClasses = map;
     }
     
     /**
@@ -486,10 +570,10 @@ public abstract class Enum implements Comparable, Serializable {
         Entry entry = new Entry();
         Class cls = enumClass.getSuperclass();
         while (cls != null && cls != Enum.class && cls != ValuedEnum.class) {
-            Entry loopEntry = (Entry) cEnumClasses.get(cls);
+            Entry loopEntry = lookupEntry(cls);
             if (loopEntry != null) {
-                entry.list.addAll(loopEntry.list);
-                entry.map.putAll(loopEntry.map);
+                entry.unmodifiableList = loopEntry.unmodifiableList;
+                entry.unmodifiableMap = loopEntry.unmodifiableMap;
                 break;  // stop here, as this will already have had superclasses added
             }
             cls = cls.getSuperclass();